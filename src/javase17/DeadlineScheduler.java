@@ -0,0 +1,246 @@
+package javase17;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多线程的定时器 用来代替java.util.Timer
+ * Timer只有一个工作线程 所有任务依次在这个线程中执行: 一个任务执行得慢 后面的任务全部推迟 一个任务抛出异常 工作线程就结束了 所有任务都不会再执行
+ *
+ * 这里的调度线程只负责等待: 任务按照到期时间放在优先队列(堆)中 调度线程等到堆顶的任务到期 就把它交给ForkJoinPool执行 然后继续等下一个
+ * 任务在线程池中执行 多个核心可以同时执行到期的任务 空闲的线程会从忙碌的线程那里窃取任务 一个任务的异常只会记录下来 不影响其他任务和之后的执行
+ * 固定频率的任务按System.nanoTime计算每次的时间 不受系统时间调整的影响
+ *
+ * 和TimingWheel相比 堆中的任务按精确的到期时间触发 适合数量不多但要求准时的任务 大量的超时任务用TimingWheel更省
+ * 提供队列深度 执行次数 失败次数 延迟(实际执行时间比计划时间晚了多少)等统计 和Timer一样 用完之后要调用cancel()
+ */
+public class DeadlineScheduler {
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ForkJoinPool pool;
+    private final Thread dispatcher;
+    private final AtomicLong sequence = new AtomicLong(); // 到期时间相同时按添加的顺序执行
+    private volatile boolean cancelled;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLateness = new LongAdder();
+    private final AtomicLong maxLateness = new AtomicLong();
+
+    public DeadlineScheduler() {
+        this(Math.max(4, Runtime.getRuntime().availableProcessors())); // 任务中可能会休眠或者等待I/O 至少4个线程
+    }
+
+    public DeadlineScheduler(int parallelism) {
+
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true); // 异步模式: 任务按提交的顺序执行
+        this.dispatcher = new Thread(this::dispatch, "DeadlineScheduler");
+        this.dispatcher.start();
+
+    }
+
+    public Task schedule(Runnable task, long delay) { // 和Timer一样 时间的单位是毫秒
+        return schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public Task schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Task(task, System.nanoTime() + Math.max(unit.toNanos(delay), 0), 0));
+    }
+
+    public Task scheduleAtFixedRate(Runnable task, long delay, long period) {
+        return scheduleAtFixedRate(task, delay, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Task scheduleAtFixedRate(Runnable task, long delay, long period, TimeUnit unit) {
+
+        if (period <= 0) throw new IllegalArgumentException("周期必须大于0");
+        return add(new Task(task, System.nanoTime() + Math.max(unit.toNanos(delay), 0), unit.toNanos(period)));
+
+    }
+
+    /**
+     * 结束定时器 还没有执行的任务不再执行 正在执行的任务会执行完
+     */
+    public void cancel() {
+
+        lock.lock();
+        try {
+            cancelled = true;
+            queue.clear();
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        pool.shutdown();
+
+    }
+
+    /**
+     * 队列中等待到期的任务数
+     */
+    public int queueDepth() {
+
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * 已经到期 正在线程池中排队或者执行的任务数
+     */
+    public long running() {
+        return pool.getQueuedSubmissionCount() + pool.getActiveThreadCount();
+    }
+
+    public long executed() {
+        return executed.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    public long averageLateness() {
+
+        long n = executed.sum();
+        return n == 0 ? 0 : totalLateness.sum() / n;
+
+    }
+
+    public long maxLateness() {
+        return maxLateness.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DeadlineScheduler{等待%d个 执行中%d个 已执行%d次 失败%d次 平均延迟%.3fms 最大延迟%.3fms}",
+                queueDepth(), running(), executed(), failed(), averageLateness() / 1e6, maxLateness() / 1e6);
+    }
+
+    private Task add(Task task) {
+
+        lock.lock();
+        try {
+            if (cancelled) throw new IllegalStateException("定时器已经结束");
+            if (task.cancelled) return task; // 和cancel()在同一个锁中检查 执行期间被取消的周期任务不会再放回队列
+            task.sequence = sequence.getAndIncrement();
+            queue.add(task);
+            if (queue.peek() == task) available.signal(); // 新任务比之前的都早 叫醒调度线程重新计算等待时间
+        } finally {
+            lock.unlock();
+        }
+        return task;
+
+    }
+
+    private void dispatch() { // 调度线程: 等待堆顶的任务到期 交给线程池
+
+        lock.lock();
+        try {
+            while (!cancelled) {
+                Task task = queue.peek();
+                if (task == null) {
+                    available.awaitUninterruptibly();
+                    continue;
+                }
+                long delay = task.deadline - System.nanoTime();
+                if (delay > 0) {
+                    try {
+                        available.awaitNanos(delay);
+                    } catch (InterruptedException ignored) {
+                    }
+                    continue;
+                }
+                queue.poll();
+                pool.execute(task);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * 一个定时任务 可以单独取消
+     */
+    public final class Task implements Runnable, Comparable<Task> {
+
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long sequence;
+        private volatile boolean cancelled;
+
+        private Task(Runnable task, long deadline, long period) {
+
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+
+        }
+
+        public boolean cancel() {
+
+            lock.lock();
+            try {
+                boolean result = !cancelled;
+                cancelled = true;
+                queue.remove(this);
+                return result;
+            } finally {
+                lock.unlock();
+            }
+
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() { // 在线程池中执行
+
+            if (cancelled) return;
+            long lateness = Math.max(System.nanoTime() - deadline, 0);
+            totalLateness.add(lateness);
+            maxLateness.accumulateAndGet(lateness, Math::max);
+            try {
+                task.run();
+            } catch (Throwable e) { // 只影响这一次执行
+                failed.increment();
+                e.printStackTrace();
+            }
+            executed.increment();
+
+            if (period > 0 && !DeadlineScheduler.this.cancelled) { // 是否已经取消由add()在锁中检查
+                deadline += period; // 从计划的时间算起 误差不会累积
+                try {
+                    add(this);
+                } catch (IllegalStateException ignored) { // 执行期间定时器结束了
+                }
+            }
+
+        }
+
+        @Override
+        public int compareTo(Task other) {
+
+            int result = Long.compare(deadline - other.deadline, 0); // nanoTime可能溢出 比较差值
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+
+        }
+
+    }
+
+}
@@ -1,7 +1,11 @@
 package javase17;
 
+import java.util.Arrays;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 定时器
@@ -127,6 +131,24 @@ import java.util.TimerTask;
  *                          timer.cancel(); // 结束
  *                      }
  *                  }, 1000);
+ *
+ * 最开始的TimerTaskMe每个定时任务都要一个线程 定时任务多起来以后(比如每个网络连接一个超时) 线程就不够用了
+ * 现在的TimerTaskMe改用时间轮(见TimingWheel): 一个线程像钟表的指针一样每毫秒走一格 到期的任务交给少量的工作线程执行
+ * 添加和取消任务都是O(1)的 一百万个定时任务也只是一百万个小对象 (见test4)
+ *
+ * startRun()每次执行完再休眠time 任务本身要执行一段时间的话 周期实际上是 time + 执行时间 而且越拖越晚
+ * startRun(Overrun)按固定频率执行 每次的时间都从第一次的时间算起 执行得太慢错过了时间时 可以选择补上(CATCH_UP)或者跳过(SKIP):
+ *                  TimingWheel.Timeout timeout = new TimerTaskMe(() -> flushMetrics(), 1000).startRun(TimingWheel.Overrun.SKIP);
+ *                  ...
+ *                  timeout.cancel(); // 停止 不需要中断线程
+ *                  System.out.println(timeout); // 执行次数 失败次数 跳过次数 延迟
+ *
+ * Timer只有一个工作线程: 一个任务执行得慢 其他任务都要等它 一个任务抛出异常 工作线程就结束了 整个Timer都不能再用
+ * DeadlineScheduler用法和Timer差不多 但是到期的任务交给ForkJoinPool执行 多个核心同时执行 一个任务的异常只会被记录下来:
+ *                  DeadlineScheduler scheduler = new DeadlineScheduler();
+ *                  scheduler.schedule(() -> System.out.println(Thread.currentThread().getName()), 1000);
+ *                  System.out.println(scheduler); // 队列深度 执行次数 失败次数 延迟
+ *                  scheduler.cancel();
  */
 public class Main {
 
@@ -148,21 +170,113 @@ public class Main {
             }
         }, 1000);*/
 
-        Timer timer = new Timer();
+        /*Timer timer = new Timer();
         timer.schedule(new TimerTask() {
             @Override
             public void run() {
                 System.out.println(Thread.currentThread().getName());
                 timer.cancel();
             }
+        }, 1000);*/
+
+        DeadlineScheduler scheduler = new DeadlineScheduler(); // 任务在多个线程中执行 一个任务慢或者出错不影响其他任务
+        scheduler.schedule(() -> {
+            throw new IllegalStateException("这个任务出错了"); // 换成Timer的话 之后的任务都不会再执行
+        }, 500);
+        scheduler.schedule(() -> {
+            try {
+                Thread.sleep(2000); // 换成Timer的话 这两秒内其他任务都要等着
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, 500);
+        DeadlineScheduler.Task tick = scheduler.scheduleAtFixedRate(() -> System.out.println(Thread.currentThread().getName()), 0, 200);
+        scheduler.schedule(() -> {
+            tick.cancel();
+            System.out.println(scheduler);
+            scheduler.cancel();
         }, 1000);
 
     }
 
+    static void test4() { // 一百万个定时任务 取消其中一半 统计实际执行时间比预定时间晚了多少
+
+        int count = 1_000_000;
+        TimingWheel wheel = new TimingWheel();
+        long[] lateness = new long[count];
+        CountDownLatch latch = new CountDownLatch(count / 2);
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[count];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            long delay = ThreadLocalRandom.current().nextLong(3000, 5000);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            timeouts[i] = wheel.schedule(() -> {
+                lateness[index] = System.nanoTime() - deadline;
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        long scheduled = System.nanoTime();
+        for (int i = 1; i < count; i += 2) timeouts[i].cancel();
+        long cancelled = System.nanoTime();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.out.printf("添加%d个任务 %.0fms 取消一半 %.0fms 等待中%d个 堆内存%dMB%n", count, (scheduled - start) / 1e6,
+                (cancelled - scheduled) / 1e6, wheel.pending(), (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        long[] fired = new long[count / 2];
+        for (int i = 0; i < fired.length; i++) fired[i] = lateness[i * 2];
+        Arrays.sort(fired);
+        System.out.printf("执行了%d个 延迟 p50=%.2fms p99=%.2fms 最大=%.2fms%n", fired.length,
+                fired[fired.length / 2] / 1e6, fired[(int) (fired.length * 0.99)] / 1e6, fired[fired.length - 1] / 1e6);
+
+    }
+
+    static void test5() { // 每次执行耗时30ms 比较固定间隔和固定频率执行两秒后的次数和延迟
+
+        Runnable slow = () -> {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Runnable overrun = () -> { // 每5次有一次耗时250ms 超过了周期
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(5) == 0 ? 250 : 30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        TimingWheel.Timeout delay = new TimerTaskMe(slow, 100).startRun();
+        TimingWheel.Timeout rate = new TimerTaskMe(slow, 100).startRun(TimingWheel.Overrun.CATCH_UP);
+        TimingWheel.Timeout catchUp = new TimerTaskMe(overrun, 100).startRun(TimingWheel.Overrun.CATCH_UP);
+        TimingWheel.Timeout skip = new TimerTaskMe(overrun, 100).startRun(TimingWheel.Overrun.SKIP);
+        try {
+            Thread.sleep(2050);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        for (TimingWheel.Timeout timeout : new TimingWheel.Timeout[]{delay, rate, catchUp, skip}) timeout.cancel(true);
+        System.out.println("固定间隔       " + delay); // 大约2000 / (100 + 30)次
+        System.out.println("固定频率       " + rate); // 20次
+        System.out.println("固定频率 补上  " + catchUp);
+        System.out.println("固定频率 跳过  " + skip);
+
+    }
+
     public static void main(String[] args) {
         //test1();
         //test2();
         test3();
+        //test4();
+        //test5();
     }
 
 }
@@ -1,6 +1,17 @@
 package javase17;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 所有的TimerTaskMe共用一个时间轮(见TimingWheel) 不再为每个定时任务创建一个线程
+ * 用法和之前一样 start()延时执行一次 startRun()每次执行结束后间隔time再执行
+ * startRun(Overrun)按固定频率执行: 第n次在 启动时间 + n * time 执行 不会因为任务本身的执行时间越拖越晚
+ * 都会返回一个Timeout 用来取消任务和查看执行的统计 (不再需要中断线程来停止)
+ */
 public class TimerTaskMe {
+
+    static final TimingWheel WHEEL = new TimingWheel();
+
     Runnable task;
     long time;
 
@@ -9,32 +20,16 @@ public class TimerTaskMe {
         this.time = time;
     }
 
-    public void start() {
-
-        new Thread(() -> {
-            try {
-                Thread.sleep(time);
-                task.run();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }).start();
-
+    public TimingWheel.Timeout start() {
+        return WHEEL.schedule(task, time, TimeUnit.MILLISECONDS);
     }
 
-    public void startRun() {
-
-        new Thread(() -> {
-            try {
-                while (true) {
-                    Thread.sleep(time);
-                    task.run();
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }).start();
+    public TimingWheel.Timeout startRun() {
+        return WHEEL.scheduleWithFixedDelay(task, time, time, TimeUnit.MILLISECONDS); // 和之前一样: 先等time 执行完再等time
+    }
 
+    public TimingWheel.Timeout startRun(TimingWheel.Overrun overrun) {
+        return WHEEL.scheduleAtFixedRate(task, time, time, TimeUnit.MILLISECONDS, overrun);
     }
 
 }
@@ -0,0 +1,466 @@
+package javase17;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间轮
+ * 每个定时任务一个线程 几万个定时任务就是几万个线程 而Timer的任务队列是一个堆 添加和取消都是O(log n)
+ * 时间轮把时间分成一格一格(默认1毫秒) 排成一个环(默认512格) 一个指针线程每过一格就向前走一格 把这一格里到期的任务交给工作线程执行
+ * 超过一圈的任务记下还要转几圈(rounds) 指针每经过一次减一 所以不管延时多长 添加和取消都是O(1)
+ *
+ * 添加任务时只是放进一个无锁队列 由指针线程在下一格时放进对应的格子 格子中的任务用双向链表连接 取消时直接从链表中摘除
+ * 任务在工作线程池中执行 一个任务抛出异常或者执行得很慢 不会影响其他任务按时触发 (除非所有工作线程都被占满)
+ * 没有待执行的任务时指针线程和工作线程都会退出 所以不需要关闭 有新任务时再自动启动
+ *
+ * 固定频率的任务按照单调时钟(System.nanoTime)计算每一次的时间: 第n次就是 第一次的时间 + n * 周期 不会因为任务的执行时间或者调度的误差越拖越晚
+ * 任务执行得比周期还久时 由Overrun决定: CATCH_UP把错过的次数连续补上 SKIP跳过错过的次数 从下一个整周期继续
+ * 返回的Timeout可以用来取消任务 查看执行次数 失败次数 延迟等统计 也可以像Future一样等待任务结束
+ */
+public class TimingWheel {
+
+    private static final int MAX_TRANSFER = 100_000; // 每一格最多从队列中取出的新任务数 避免一格耗时太久
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Timeout.class, "state", int.class); // 比每个任务一个AtomicInteger省内存
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong(); // 还没有结束的任务数(周期任务取消前一直算在内)
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ThreadPoolExecutor workers;
+    private long tick; // 只有指针线程访问
+
+    /**
+     * 固定频率的任务执行时间超过周期时的处理方式
+     */
+    public enum Overrun {
+        CATCH_UP, // 错过的次数立即连续执行 总的执行次数不变
+        SKIP // 跳过错过的次数 下一次在之后最近的整周期执行
+    }
+
+    public TimingWheel() {
+        this(1, TimeUnit.MILLISECONDS, 512, Math.max(4, Runtime.getRuntime().availableProcessors())); // 任务中可能会休眠或者等待I/O 至少4个工作线程
+    }
+
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, int threads) {
+
+        this.tickNanos = Math.max(unit.toNanos(tickDuration), 1);
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel, 2) - 1) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+        this.mask = size - 1;
+
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "TimingWheel-worker-" + count.incrementAndGet()));
+        this.workers.allowCoreThreadTimeOut(true); // 空闲一秒后退出 不会让程序无法结束
+
+    }
+
+    /**
+     * 延时delay后执行一次
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(task, deadline(delay, unit), 0, null));
+    }
+
+    /**
+     * 每次执行结束后 间隔delay再执行下一次
+     */
+    public Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+
+        if (delay <= 0) throw new IllegalArgumentException("间隔必须大于0");
+        return add(new Timeout(task, deadline(initialDelay, unit), -unit.toNanos(delay), null));
+
+    }
+
+    /**
+     * 按固定的频率执行 下一次的时间从上一次计划的时间算起 不受任务执行时间的影响
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return scheduleAtFixedRate(task, initialDelay, period, unit, Overrun.CATCH_UP);
+    }
+
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit, Overrun overrun) {
+
+        if (period <= 0) throw new IllegalArgumentException("周期必须大于0");
+        return add(new Timeout(task, deadline(initialDelay, unit), unit.toNanos(period), overrun));
+
+    }
+
+    /**
+     * 还没有结束的任务数
+     */
+    public long pending() {
+        return pending.get();
+    }
+
+    long now() { // 从时间轮创建开始经过的纳秒数 使用单调时钟 不受系统时间调整的影响
+        return System.nanoTime() - startTime;
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        return now() + Math.max(unit.toNanos(delay), 0);
+    }
+
+    private Timeout add(Timeout timeout) {
+
+        pending.incrementAndGet();
+        added.add(timeout);
+        start();
+        return timeout;
+
+    }
+
+    private void start() {
+
+        if (running.get() || !running.compareAndSet(false, true)) return;
+        Thread ticker = new Thread(this::run, "TimingWheel");
+        ticker.start();
+
+    }
+
+    private void run() { // 指针线程
+
+        tick = now() / tickNanos; // 重新启动时从当前时间所在的格子开始 之前的格子都已经空了
+        while (true) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - now()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            removeCancelled();
+            transfer();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+
+            if (pending.get() == 0 && added.isEmpty()) { // 没有任务了 退出指针线程
+                running.set(false);
+                if (pending.get() == 0 || !running.compareAndSet(false, true)) return; // 退出的同时又有新任务 继续运行
+                tick = Math.max(tick, now() / tickNanos);
+            }
+        }
+
+    }
+
+    private void transfer() { // 把新添加的任务放进对应的格子
+
+        for (int i = 0; i < MAX_TRANSFER; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null) return;
+            if (timeout.state != Timeout.WAITING) continue; // 放进格子之前就取消了
+
+            long ticks = Math.max(timeout.deadline / tickNanos, tick); // 已经过期的放进当前这一格
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+
+    }
+
+    private void removeCancelled() {
+
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+
+    }
+
+    private void fire(Timeout timeout) {
+
+        if (!STATE.compareAndSet(timeout, Timeout.WAITING, Timeout.RUNNING)) return; // 刚刚被取消了
+        workers.execute(timeout);
+
+    }
+
+    private final class Bucket { // 一个格子 任务的双向链表
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+
+        }
+
+        void expire() { // 指针走到这一格: 圈数为0的任务到期 其余的圈数减一
+
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0) { // 放进格子时已经算好了圈数 到这里时一定已经到期
+                    remove(timeout);
+                    fire(timeout);
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+
+        }
+
+        void remove(Timeout timeout) {
+
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            else head = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            else tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+
+        }
+
+    }
+
+    /**
+     * 一个定时任务 可以随时取消 同时记录执行的统计
+     * 作为Future使用时 get()等到任务结束: 一次性的任务返回null或者抛出任务的异常 周期任务只有被取消才会结束 此时抛出CancellationException
+     */
+    public final class Timeout implements Runnable, Future<Void> {
+
+        static final int WAITING = 0, RUNNING = 1, CANCELLED = 2, DONE = 3;
+
+        private final Runnable task;
+        private final long period; // 0: 只执行一次 大于0: 固定频率 小于0: 固定间隔
+        private final Overrun overrun;
+        private volatile int state = WAITING;
+        private volatile long deadline; // getDelay()会在其他线程中读取
+        private long rounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private volatile Thread runner; // 正在执行任务的线程 cancel(true)时中断它 清除和中断都在this的锁中进行
+        private volatile Throwable failure; // 最近一次执行抛出的异常
+        private volatile long executions;
+        private volatile long failures;
+        private volatile long skipped;
+        private volatile long totalLateness;
+        private volatile long maxLateness;
+
+        private Timeout(Runnable task, long deadline, long period, Overrun overrun) {
+
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+            this.overrun = overrun;
+
+        }
+
+        /**
+         * 取消任务 正在执行的那一次不会被打断 但之后不会再执行 任务已经结束或者已经取消时返回false
+         */
+        public boolean cancel() {
+            return cancel(false);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+
+            while (true) {
+                int current = state;
+                if (current == CANCELLED || current == DONE) return false;
+                if (STATE.compareAndSet(this, current, CANCELLED)) {
+                    pending.decrementAndGet();
+                    if (current == WAITING) cancelled.add(this); // 由指针线程从格子中摘除
+                    if (mayInterruptIfRunning) interrupt();
+                    finished();
+                    return true;
+                }
+            }
+
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return state >= CANCELLED;
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+
+            synchronized (this) {
+                while (state < CANCELLED) wait();
+            }
+            return report();
+
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+
+            long end = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                long remaining;
+                while (state < CANCELLED) {
+                    if ((remaining = end - System.nanoTime()) <= 0) throw new TimeoutException();
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            return report();
+
+        }
+
+        /**
+         * 已经执行的次数(包括抛出异常的)
+         */
+        public long executions() {
+            return executions;
+        }
+
+        public long failures() {
+            return failures;
+        }
+
+        /**
+         * Overrun.SKIP时跳过的次数
+         */
+        public long skipped() {
+            return skipped;
+        }
+
+        /**
+         * 实际开始执行的时间比计划的时间平均晚了多少纳秒
+         */
+        public long averageLateness() {
+
+            long n = executions;
+            return n == 0 ? 0 : totalLateness / n;
+
+        }
+
+        public long maxLateness() {
+            return maxLateness;
+        }
+
+        /**
+         * 距离下一次执行还有多少时间 任务结束后返回0
+         */
+        public long getDelay(TimeUnit unit) {
+            return isDone() ? 0 : unit.convert(Math.max(deadline - now(), 0), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Timeout{执行%d次 失败%d次 跳过%d次 平均延迟%.3fms 最大延迟%.3fms%s}", executions, failures, skipped,
+                    averageLateness() / 1e6, maxLateness / 1e6, isCancelled() ? " 已取消" : isDone() ? " 已结束" : "");
+        }
+
+        @Override
+        public void run() { // 在工作线程中执行 同一个任务的两次执行不会重叠
+
+            long start = now();
+            long lateness = Math.max(start - deadline, 0);
+            totalLateness += lateness;
+            if (lateness > maxLateness) maxLateness = lateness;
+            runner = Thread.currentThread();
+            try {
+                task.run();
+            } catch (Throwable e) { // 一个任务的异常不影响其他任务 周期任务也会继续执行
+                failure = e;
+                failures++;
+                e.printStackTrace();
+            } finally {
+                synchronized (this) { // 之后interrupt()看到的一定是null 之前发出的中断会被下面清除
+                    runner = null;
+                }
+                executions++;
+                Thread.interrupted(); // cancel(true)的中断不要留给线程池中的下一个任务
+            }
+
+            if (period == 0) {
+                if (STATE.compareAndSet(this, RUNNING, DONE)) {
+                    pending.decrementAndGet();
+                    finished();
+                }
+                return;
+            }
+            deadline = nextDeadline();
+            if (STATE.compareAndSet(this, RUNNING, WAITING)) { // 执行期间被取消时不再继续
+                added.add(this);
+                start();
+            }
+
+        }
+
+        private long nextDeadline() {
+
+            if (period < 0) return now() - period; // 固定间隔: 从执行结束时算起
+            long next = deadline + period; // 固定频率: 从计划的时间算起 不从实际执行的时间算起 误差不会累积
+            if (overrun == Overrun.SKIP) {
+                long now = now();
+                if (next < now) {
+                    long missed = (now - next) / period + 1;
+                    skipped += missed;
+                    next += missed * period;
+                }
+            }
+            return next;
+
+        }
+
+        private synchronized void interrupt() { // 与run()结束时清除runner互斥 读到runner之后它不会去执行线程池中的下一个任务
+
+            Thread thread = runner;
+            if (thread != null) thread.interrupt();
+
+        }
+
+        private void finished() {
+
+            synchronized (this) {
+                notifyAll();
+            }
+
+        }
+
+        private Void report() throws ExecutionException {
+
+            if (state == CANCELLED) throw new CancellationException();
+            if (failure != null) throw new ExecutionException(failure);
+            return null;
+
+        }
+
+    }
+
+}
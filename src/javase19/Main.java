@@ -1,8 +1,12 @@
 package javase19;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * java多线程编程实战
@@ -14,6 +18,20 @@ import java.util.Queue;
  * 此时消费者在等待生产者往货架上生产产品 而当货架有货物的时候 消费者可以从货架上拿走商品 生产者此时等待货架出现空位 进而补货 这样不断的循环
  *
  * 通过多线程编程 来模拟一个餐厅的2个厨师和3个顾客 假设厨师炒出一个菜的时间为3秒 顾客吃掉菜品的时间为4秒
+ *
+ * 上面的货架是 LinkedList + synchronized + wait/notifyAll: 每出一个菜都要创建一个链表节点 货架没有容量限制 厨师比顾客快时菜会一直堆下去
+ * 每次notifyAll会把所有等待的顾客都叫醒 最后只有一个拿到菜 其他的再回去等 线程一多 大部分时间都花在锁和唤醒上
+ * test2换成了MpmcQueue(有界的无锁环形队列): 货架满了厨师就等着 顾客之间 厨师之间只在一次CAS上竞争
+ *                  private static final MpmcQueue<Object> shelf = new MpmcQueue<>(4, MpmcQueue.WaitStrategy.PARK); // 最多放4个菜
+ *                  shelf.put(new Object()); // 厨师: 满了就等
+ *                  shelf.take(); // 顾客: 空了就等
+ *
+ * 等待的方式由WaitStrategy决定 test3比较了不同数量的厨师和顾客下 每秒能传递多少个菜(不休眠 只测队列本身)
+ * 线程数不超过核心数时SPIN最快 线程数远多于核心数时 自旋的线程会占着CPU不干活 PARK更好
+ *
+ * 真实的系统往往不止两个阶段 比如 点单 -> 厨师 -> 传菜 -> 顾客 每个阶段的快慢不同 Pipeline把这种结构抽象了出来(见test4):
+ * 每个阶段一个有界队列和若干个线程 下游慢了队列就会满 上游自然就慢下来(背压) 一直传到点单的地方 不会有菜无限堆积
+ * 统计中平均占用接近100%的阶段就是瓶颈 给它加线程 test5用同样的结构做数据导入: 解析 -> 批量写入
  */
 public class Main {
 
@@ -64,9 +82,222 @@ public class Main {
 
     }
 
-    public static void main(String[] args) {
+    static void test1() {
         Cs();
         Gk();
     }
 
+    private static final MpmcQueue<Object> shelf = new MpmcQueue<>(4, MpmcQueue.WaitStrategy.PARK);
+
+    static void test2() { // 货架最多放4个菜 厨师快于顾客时会停下来等 不会无限堆积
+
+        for (String name : new String[]{"厨师一号", "厨师二号"}) {
+            new Thread(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(3000);
+                        shelf.put(new Object());
+                        System.out.println(new Date() + " " + name + "出餐了 " + shelf);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, name).start();
+        }
+        for (String name : new String[]{"顾客一号", "顾客二号", "顾客三号"}) {
+            new Thread(() -> {
+                while (true) {
+                    try {
+                        shelf.take();
+                        System.out.println(new Date() + " " + name + "拿到了餐品 正在吃饭...");
+                        Thread.sleep(4000);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, name).start();
+        }
+
+    }
+
+    interface Shelf { // test3中比较的几种货架
+        void put(Object o) throws InterruptedException;
+        Object take() throws InterruptedException;
+    }
+
+    private static final Object STOP = new Object(); // 告诉顾客结束的特殊菜品
+
+    static void test3() { // 每种配置运行一秒 统计每秒传递的菜品数量
+
+        int capacity = 1024;
+        int[][] configs = {{2, 3}, {3, 2}, {16, 16}, {64, 64}};
+        System.out.println("厨师/顾客  synchronized  ArrayBlockingQueue        SPIN       YIELD        PARK  (万个/秒)");
+        for (int[] config : configs) {
+            StringBuilder line = new StringBuilder(String.format("%4d/%-4d", config[0], config[1]));
+            line.append(String.format("%14.1f", benchmark(config[0], config[1], new Shelf() {
+                private final Queue<Object> queue = new LinkedList<>();
+                public void put(Object o) throws InterruptedException {
+                    synchronized (queue) {
+                        while (queue.size() >= capacity) queue.wait(); // 为了公平 这里也限制了容量
+                        queue.offer(o);
+                        queue.notifyAll();
+                    }
+                }
+                public Object take() throws InterruptedException {
+                    synchronized (queue) {
+                        while (queue.isEmpty()) queue.wait();
+                        Object o = queue.poll();
+                        queue.notifyAll();
+                        return o;
+                    }
+                }
+            })));
+            ArrayBlockingQueue<Object> blocking = new ArrayBlockingQueue<>(capacity);
+            line.append(String.format("%20.1f", benchmark(config[0], config[1], new Shelf() {
+                public void put(Object o) throws InterruptedException {
+                    blocking.put(o);
+                }
+                public Object take() throws InterruptedException {
+                    return blocking.take();
+                }
+            })));
+            for (MpmcQueue.WaitStrategy strategy : MpmcQueue.WaitStrategy.values()) {
+                MpmcQueue<Object> queue = new MpmcQueue<>(capacity, strategy);
+                line.append(String.format("%12.1f", benchmark(config[0], config[1], new Shelf() {
+                    public void put(Object o) throws InterruptedException {
+                        queue.put(o);
+                    }
+                    public Object take() throws InterruptedException {
+                        return queue.take();
+                    }
+                })));
+            }
+            System.out.println(line);
+        }
+
+    }
+
+    static double benchmark(int producers, int consumers, Shelf shelf) {
+
+        LongAdder taken = new LongAdder();
+        List<Thread> cooks = new ArrayList<>(), customers = new ArrayList<>();
+        Object dish = new Object();
+        for (int i = 0; i < producers; i++) cooks.add(new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) shelf.put(dish);
+            } catch (InterruptedException ignored) { // 时间到了
+            }
+        }));
+        for (int i = 0; i < consumers; i++) customers.add(new Thread(() -> {
+            try {
+                long count = 0;
+                while (shelf.take() != STOP) count++;
+                taken.add(count);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }));
+
+        long start = System.nanoTime();
+        customers.forEach(Thread::start);
+        cooks.forEach(Thread::start);
+        try {
+            Thread.sleep(1000);
+            cooks.forEach(Thread::interrupt);
+            for (Thread cook : cooks) cook.join();
+            long elapsed = System.nanoTime() - start;
+            for (int i = 0; i < consumers; i++) shelf.put(STOP); // 每个顾客一个 货架上剩下的菜吃完后结束
+            for (Thread customer : customers) customer.join();
+            return taken.sum() / (elapsed / 1e9) / 1e4;
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return 0;
+        }
+
+    }
+
+    static void test4() { // 用Pipeline重写餐厅 时间缩短为原来的十分之一: 厨师300ms 传菜员一次最多端3个菜 顾客400ms
+
+        Pipeline<Integer, List<String>> restaurant = Pipeline.<Integer>source()
+                .map("厨师", 2, 4, order -> {
+                    sleep(300);
+                    System.out.println(new Date() + " " + Thread.currentThread().getName() + "出餐了 " + order + "号菜");
+                    return order + "号菜";
+                })
+                .batch("传菜", 1, 4, 3, dishes -> {
+                    sleep(50);
+                    return dishes;
+                })
+                .sink("顾客", 3, 2, dishes -> {
+                    System.out.println(new Date() + " " + Thread.currentThread().getName() + "拿到了" + dishes + " 正在吃饭...");
+                    sleep(400L * dishes.size());
+                });
+
+        Thread monitor = new Thread(() -> { // 每秒看一下各个阶段的情况
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.println(restaurant);
+            }
+        });
+        monitor.start();
+        try {
+            for (int order = 1; order <= 20; order++) restaurant.submit(order); // 厨师忙不过来时 点单也要等
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        System.out.println(new Date() + " 20个菜都点完了 不再接受点单");
+        restaurant.close(); // 等所有的菜都吃完
+        monitor.interrupt();
+        System.out.println(restaurant);
+
+    }
+
+    static void test5() { // 导入一百万行数据: 4个线程解析 每1000行批量写入一次(每次写入假设耗时2ms)
+
+        LongAdder rows = new LongAdder();
+        Pipeline<String, Integer> ingest = Pipeline.<String>source()
+                .map("解析", 4, 4096, line -> {
+                    int comma = line.indexOf(',');
+                    return comma < 0 ? null : Long.parseLong(line.substring(comma + 1)); // 格式不对的行直接过滤掉
+                })
+                .batch("写入", 2, 4096, 1000, batch -> {
+                    sleep(2);
+                    return batch.size();
+                })
+                .sink("统计", 1, 1024, rows::add);
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < 1_000_000; i++) ingest.submit(i % 1000 == 999 ? "损坏的一行" : "row" + i + "," + i);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        ingest.close();
+        System.out.printf("写入%d行 %.0fms%n", rows.sum(), (System.nanoTime() - start) / 1e6);
+        System.out.println(ingest);
+
+    }
+
+    static void sleep(long millis) {
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    public static void main(String[] args) {
+        //test1();
+        //test2();
+        //test3();
+        test4();
+        //test5();
+    }
+
 }
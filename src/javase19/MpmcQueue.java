@@ -0,0 +1,226 @@
+package javase19;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 有界的无锁多生产者多消费者队列 用来代替 LinkedList + synchronized + wait/notifyAll
+ * LinkedList每放入一个元素都要创建一个节点 没有容量限制 生产得比消费快时会一直涨下去 每次notifyAll还会把所有等待的消费者都叫醒 最后只有一个拿到
+ *
+ * 这里用一个固定大小的数组做环形缓冲区 每个槽位带一个序号(Vyukov的做法):
+ * 槽位序号等于位置时 槽位空闲 生产者用CAS抢到tail后写入元素 把序号改成位置+1
+ * 槽位序号等于位置+1时 元素可读 消费者用CAS抢到head后取出元素 把序号改成位置+容量 留给下一圈的生产者
+ * 生产者之间 消费者之间只在CAS上竞争 生产者和消费者只在同一个槽位上才会相遇
+ *
+ * offer()/poll()不等待 满了或者空了直接返回 put()/take()满了或者空了时按WaitStrategy等待:
+ * SPIN一直自旋 延迟最低 但会占满一个核心 线程数超过核心数时反而最慢
+ * YIELD自旋一会儿后让出CPU
+ * PARK自旋 让出CPU 之后park一小段时间 空闲时几乎不占CPU 适合像餐厅这样大部分时间都在等待的场景
+ */
+public class MpmcQueue<E> {
+
+    private static final int TAIL = 8, HEAD = 24; // head和tail在counters中相隔128字节 不在同一个缓存行 生产者和消费者不会互相影响
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray counters = new AtomicLongArray(32);
+    private final int mask;
+    private final WaitStrategy strategy;
+
+    private final LongAdder fullWaits = new LongAdder();
+    private final LongAdder emptyWaits = new LongAdder();
+
+    public MpmcQueue(int capacity) {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    public MpmcQueue(int capacity, WaitStrategy strategy) {
+
+        if (capacity <= 0) throw new IllegalArgumentException("容量必须大于0");
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1; // 向上取2的幂 用位与代替取模
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        this.mask = size - 1;
+        this.strategy = strategy;
+
+    }
+
+    /**
+     * 放入一个元素 队列满时返回false
+     */
+    public boolean offer(E e) {
+
+        if (e == null) throw new NullPointerException();
+        long position = counters.get(TAIL);
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (counters.compareAndSet(TAIL, position, position + 1)) {
+                    buffer[index] = e;
+                    sequences.lazySet(index, position + 1); // 发布: 之前写入的元素对消费者可见
+                    return true;
+                }
+                position = counters.get(TAIL);
+            } else if (difference < 0) { // 这个槽位上一圈的元素还没有被取走 满了
+                return false;
+            } else {
+                position = counters.get(TAIL); // 被别的生产者抢先了
+            }
+        }
+
+    }
+
+    /**
+     * 取出一个元素 队列空时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+
+        long position = counters.get(HEAD);
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (counters.compareAndSet(HEAD, position, position + 1)) {
+                    E e = (E) buffer[index];
+                    buffer[index] = null;
+                    sequences.lazySet(index, position + mask + 1); // 槽位留给下一圈的生产者
+                    return e;
+                }
+                position = counters.get(HEAD);
+            } else if (difference < 0) { // 生产者还没有写入 空了
+                return null;
+            } else {
+                position = counters.get(HEAD); // 被别的消费者抢先了
+            }
+        }
+
+    }
+
+    /**
+     * 放入一个元素 队列满时按WaitStrategy等待
+     */
+    public void put(E e) throws InterruptedException {
+        put(e, NEVER);
+    }
+
+    /**
+     * 和put()一样 但是每次等待前检查stop 返回true时放弃放入 返回false (见Pipeline.submit 流水线停止后不会再有人取走)
+     */
+    boolean put(E e, BooleanSupplier stop) throws InterruptedException {
+
+        if (offer(e)) return true;
+        fullWaits.increment();
+        for (int attempt = 0; !offer(e); attempt++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (stop.getAsBoolean()) return false;
+            strategy.idle(attempt);
+        }
+        return true;
+
+    }
+
+    /**
+     * 取出一个元素 队列空时按WaitStrategy等待
+     */
+    public E take() throws InterruptedException {
+
+        E e = poll();
+        if (e != null) return e;
+        emptyWaits.increment();
+        for (int attempt = 0; (e = poll()) == null; attempt++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            strategy.idle(attempt);
+        }
+        return e;
+
+    }
+
+    /**
+     * 不等待 一次取出最多max个元素放进collection 返回取出的个数 一批一批地处理可以减少等待和唤醒的次数
+     */
+    public int drainTo(Collection<? super E> collection, int max) {
+
+        int n = 0;
+        E e;
+        while (n < max && (e = poll()) != null) {
+            collection.add(e);
+            n++;
+        }
+        return n;
+
+    }
+
+    /**
+     * 大概的元素个数 并发修改时只是一个近似值
+     */
+    public int size() {
+
+        long size = counters.get(TAIL) - counters.get(HEAD);
+        return (int) Math.max(0, Math.min(size, capacity()));
+
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public WaitStrategy strategy() {
+        return strategy;
+    }
+
+    public long fullWaits() { // 生产者因为队列满而等待的次数
+        return fullWaits.sum();
+    }
+
+    public long emptyWaits() { // 消费者因为队列空而等待的次数
+        return emptyWaits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "MpmcQueue{" + strategy + " " + size() + "/" + capacity() + " 满时等待" + fullWaits() + "次 空时等待" + emptyWaits() + "次}";
+    }
+
+    /**
+     * put()/take()暂时不能完成时怎么等待 attempt是已经等待的轮数
+     */
+    public enum WaitStrategy {
+
+        SPIN {
+            @Override
+            void idle(int attempt) {
+                Thread.onSpinWait();
+            }
+        },
+        YIELD {
+            @Override
+            void idle(int attempt) {
+                if (attempt < 100) Thread.onSpinWait();
+                else Thread.yield();
+            }
+        },
+        PARK {
+            @Override
+            void idle(int attempt) {
+                if (attempt < 100) Thread.onSpinWait();
+                else if (attempt < 200) Thread.yield();
+                else LockSupport.parkNanos(Math.min(1_000L << Math.min(attempt - 200, 10), 1_000_000)); // 1微秒开始翻倍 最多1毫秒
+            }
+        };
+
+        abstract void idle(int attempt);
+
+    }
+
+}
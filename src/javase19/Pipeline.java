@@ -0,0 +1,353 @@
+package javase19;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 多阶段的生产者消费者流水线 把餐厅的 厨师 -> 货架 -> 顾客 推广到任意多个阶段: 点单 -> 厨师 -> 传菜 -> 顾客
+ * 每个阶段有自己的输入队列(有界的MpmcQueue)和若干个工作线程 工作线程从输入队列取出数据 处理后放进下一个阶段的输入队列
+ *
+ * 背压: 队列都是有界的 下游处理不过来时队列会满 上游的put()就会等待 一直传到submit()的调用者 不会无限堆积
+ * 批量: 工作线程每次最多取出batch个数据一起处理 减少等待和唤醒的次数 batch()阶段把一批数据整个交给函数(比如一次写入一批记录)
+ * 关闭: close()之后不再接受新的数据 按阶段的顺序 等上游的线程都结束 再让下游处理完队列中剩下的数据 所有数据都处理完才返回
+ *       shutdownNow()中断所有线程 队列中的数据直接丢弃 正在submit()中等待的调用者会收到IllegalStateException
+ * 每个阶段都有吞吐量 队列占用 背压等待次数等统计 见Stage
+ *
+ *                  Pipeline<Integer, String> pipeline = Pipeline.<Integer>source()
+ *                          .map("厨师", 2, 4, order -> cook(order)) // 2个线程 输入队列最多4个
+ *                          .sink("顾客", 3, 4, dish -> eat(dish)); // 开始运行
+ *                  pipeline.submit(1); // 厨师忙不过来时在这里等待
+ *                  pipeline.close();
+ *                  System.out.println(pipeline); // 每个阶段的统计
+ *
+ * map()的函数返回null时 这个数据不会传给下一个阶段 可以用来过滤 函数抛出的异常(包括Error)只会被记录下来 不影响其他数据 工作线程不会因此退出
+ */
+public class Pipeline<I, O> {
+
+    private static final int BATCH = 64;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final MpmcQueue.WaitStrategy strategy;
+    private volatile boolean running;
+    private volatile boolean closed;
+    private volatile boolean aborted;
+    private final BooleanSupplier stopped = () -> aborted;
+    private final AtomicInteger submitting = new AtomicInteger(); // 正在submit() offer()中的调用者 close()等它们放完才让第一个阶段结束
+
+    private Pipeline(MpmcQueue.WaitStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public static <T> Pipeline<T, T> source() {
+        return new Pipeline<>(MpmcQueue.WaitStrategy.PARK);
+    }
+
+    public static <T> Pipeline<T, T> source(MpmcQueue.WaitStrategy strategy) {
+        return new Pipeline<>(strategy);
+    }
+
+    /**
+     * 添加一个阶段 parallelism个线程分别对每个数据执行function 结果交给下一个阶段
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Pipeline<I, R> map(String name, int parallelism, int capacity, Function<? super O, ? extends R> function) {
+
+        add(new Stage(name, parallelism, capacity, BATCH, (Function<Object, Object>) function, null));
+        return (Pipeline<I, R>) this;
+
+    }
+
+    /**
+     * 添加一个阶段 每次把已经到达的最多size个数据作为一批交给function(不会为了凑满一批而等待) 一批产生一个结果
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Pipeline<I, R> batch(String name, int parallelism, int capacity, int size, Function<? super List<O>, ? extends R> function) {
+
+        if (size <= 0) throw new IllegalArgumentException("每批的数量必须大于0");
+        add(new Stage(name, parallelism, capacity, size, null, (Function<List<Object>, Object>) (Function<?, ?>) function));
+        return (Pipeline<I, R>) this;
+
+    }
+
+    /**
+     * 添加最后一个阶段 并启动所有阶段的线程
+     */
+    @SuppressWarnings("unchecked")
+    public Pipeline<I, O> sink(String name, int parallelism, int capacity, Consumer<? super O> consumer) {
+
+        add(new Stage(name, parallelism, capacity, BATCH, o -> {
+            ((Consumer<Object>) consumer).accept(o);
+            return null;
+        }, null));
+        for (int i = 0; i < stages.size() - 1; i++) stages.get(i).next = stages.get(i + 1);
+        for (Stage stage : stages) stage.start();
+        running = true;
+        return this;
+
+    }
+
+    /**
+     * 放入一个数据 第一个阶段的队列满时等待
+     */
+    public void submit(I item) throws InterruptedException {
+
+        submitting.incrementAndGet(); // 先登记再检查closed close()看到的计数一定包含已经通过检查的调用者
+        try {
+            check();
+            if (!stages.get(0).input.put(item, stopped)) throw new IllegalStateException("流水线已经停止"); // shutdownNow()之后没有线程再取走数据 不能一直等下去
+        } finally {
+            submitting.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * 放入一个数据 第一个阶段的队列满时不等待 返回false 调用者可以决定丢弃还是稍后重试
+     */
+    public boolean offer(I item) {
+
+        submitting.incrementAndGet();
+        try {
+            check();
+            return stages.get(0).input.offer(item);
+        } finally {
+            submitting.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * 不再接受新的数据 等已经放入的数据全部处理完
+     */
+    public void close() {
+
+        for (Stage stage : stages) {
+            for (Thread worker : stage.workers) if (worker == Thread.currentThread()) throw new IllegalStateException("不能在流水线的工作线程中调用close() 它会等待自己结束");
+        }
+        if (!running || closed) return;
+        closed = true;
+        try {
+            for (int attempt = 0; submitting.get() > 0 && !aborted; attempt++) { // 关闭前已经通过检查的submit()还在放入 第一个阶段的线程继续运行 放得进去
+                if (Thread.interrupted()) throw new InterruptedException();
+                strategy.idle(attempt);
+            }
+            for (Stage stage : stages) { // 上游的线程都结束后 这个阶段的队列不会再增加 处理完就可以结束
+                stage.closing = true;
+                for (Thread worker : stage.workers) worker.join();
+                stage.finished = System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    /**
+     * 立即停止所有阶段 队列中还没有处理的数据会被丢弃
+     */
+    public void shutdownNow() {
+
+        closed = true;
+        aborted = true;
+        for (Stage stage : stages) {
+            stage.closing = true;
+            for (Thread worker : stage.workers) worker.interrupt();
+        }
+
+    }
+
+    public List<Stage> stages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder("Pipeline");
+        for (Stage stage : stages) builder.append("\n    ").append(stage);
+        return builder.toString();
+
+    }
+
+    private void add(Stage stage) {
+
+        if (running) throw new IllegalStateException("流水线已经启动 不能再添加阶段");
+        stages.add(stage);
+
+    }
+
+    private void check() {
+
+        if (!running) throw new IllegalStateException("流水线还没有启动 先调用sink()");
+        if (closed) throw new IllegalStateException("流水线已经关闭");
+
+    }
+
+    /**
+     * 流水线中的一个阶段 统计数据都可以在运行时读取
+     */
+    public final class Stage {
+
+        private final String name;
+        private final int batch;
+        private final MpmcQueue<Object> input;
+        private final Function<Object, Object> each; // map()和sink(): 逐个处理
+        private final Function<List<Object>, Object> whole; // batch(): 整批处理
+        private final Thread[] workers;
+        private Stage next;
+        private volatile boolean closing;
+        private volatile long started;
+        private volatile long finished;
+
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder occupancy = new LongAdder(); // 每次取数据时队列中的数据个数之和 除以batches就是平均占用
+
+        private Stage(String name, int parallelism, int capacity, int batch, Function<Object, Object> each, Function<List<Object>, Object> whole) {
+
+            if (parallelism <= 0) throw new IllegalArgumentException("线程数必须大于0");
+            this.name = name;
+            this.batch = batch;
+            this.input = new MpmcQueue<>(capacity, strategy);
+            this.each = each;
+            this.whole = whole;
+            this.workers = new Thread[parallelism];
+            for (int i = 0; i < parallelism; i++) workers[i] = new Thread(this::work, name + "-" + (i + 1));
+
+        }
+
+        private void start() {
+
+            started = System.nanoTime();
+            for (Thread worker : workers) worker.start();
+
+        }
+
+        private void work() {
+
+            List<Object> items = new ArrayList<>(Math.min(batch, input.capacity()));
+            int attempt = 0;
+            try {
+                while (!aborted) {
+                    int size = input.size();
+                    int limit = Math.min(batch, Math.max(1, size / workers.length)); // 队列中数据不多时平分给各个线程 不要一个线程全拿走
+                    if (input.drainTo(items, limit) == 0) {
+                        if (closing) { // closing之后上游不会再放入 这里取不到说明已经处理完了
+                            if (input.drainTo(items, limit) == 0) return;
+                        } else {
+                            strategy.idle(attempt++);
+                            continue;
+                        }
+                    }
+                    attempt = 0;
+                    batches.increment();
+                    occupancy.add(size);
+                    process(items);
+                    items.clear();
+                }
+            } catch (InterruptedException e) { // shutdownNow()
+            }
+
+        }
+
+        private void process(List<Object> items) throws InterruptedException {
+
+            if (whole != null) {
+                Object result;
+                try {
+                    result = whole.apply(new ArrayList<>(items)); // items会被重复使用 交给function的是一份拷贝
+                } catch (Throwable e) { // 整批都算失败
+                    failed.add(items.size());
+                    e.printStackTrace();
+                    return;
+                }
+                processed.add(items.size());
+                forward(result);
+                return;
+            }
+            for (Object item : items) {
+                Object result;
+                try {
+                    result = each.apply(item);
+                } catch (Throwable e) { // 只影响这一个数据 Error也不能让线程退出 否则上游的put()会永远等下去
+                    failed.increment();
+                    e.printStackTrace();
+                    continue;
+                }
+                processed.increment();
+                forward(result);
+            }
+
+        }
+
+        private void forward(Object result) throws InterruptedException {
+            if (result != null && next != null) next.input.put(result); // 下游的队列满了就在这里等 这就是背压
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int parallelism() {
+            return workers.length;
+        }
+
+        public long processed() {
+            return processed.sum();
+        }
+
+        public long failed() {
+            return failed.sum();
+        }
+
+        public double throughput() { // 每秒处理的数据个数
+
+            long end = finished != 0 ? finished : System.nanoTime();
+            return started == 0 ? 0 : processed.sum() / ((end - started) / 1e9);
+
+        }
+
+        public int queued() {
+            return input.size();
+        }
+
+        public int capacity() {
+            return input.capacity();
+        }
+
+        public double averageOccupancy() { // 平均每次取数据时队列被占用的比例 接近1说明这个阶段是瓶颈
+
+            long n = batches.sum();
+            return n == 0 ? 0 : (double) occupancy.sum() / n / input.capacity();
+
+        }
+
+        public double averageBatch() {
+
+            long n = batches.sum();
+            return n == 0 ? 0 : (double) (processed.sum() + failed.sum()) / n;
+
+        }
+
+        public long backpressure() { // 上游因为这个阶段的队列满而等待的次数
+            return input.fullWaits();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s{%d个线程 处理%d个 失败%d个 %.1f个/秒 队列%d/%d 平均占用%.0f%% 平均每批%.1f个 背压等待%d次}",
+                    name, parallelism(), processed(), failed(), throughput(), queued(), capacity(),
+                    averageOccupancy() * 100, averageBatch(), backpressure());
+        }
+
+    }
+
+}
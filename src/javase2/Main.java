@@ -1,9 +1,13 @@
 package javase2;
 
+import javase4.DirectBufferPool;
+
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
 /**
  * 文件流
@@ -86,6 +90,9 @@ import java.io.IOException;
  *
  * 注意: 一次性读取同单个读取一样 当没有任何数据可读时 依然会返回-1
  *
+ * 一次性读进数组只适合小文件: available()和数组长度都是int 超过2GB的文件根本放不下 而且整个文件都要复制到堆中
+ * 读取很大的文件时可以使用MappedFileInputStream 它分段把文件映射到内存 用法和FileInputStream一样 还可以seek()到任意位置 (见test5)
+ *
  * 通过skip()方法可以跳过指定数量的字节:
  *                  try (FileInputStream inputStream = new FileInputStream("javase26.test.txt")) {
  *                      System.out.println(inputStream.skip(1));
@@ -133,6 +140,9 @@ import java.io.IOException;
  *                  } catch (IOException e) {
  *                      e.printStackTrace();
  *                  }
+ *
+ * 每次拷贝都new一个数组 数据还要在数组和内核之间来回复制 拷贝很多文件时可以通过通道和池化的直接缓冲区来拷贝(见javase4.DirectBufferPool):
+ *                  DirectBufferPool.copy(inputStream.getChannel(), outputStream.getChannel());
  */
 public class Main {
 
@@ -238,7 +248,7 @@ public class Main {
             e.printStackTrace();
         }*/
 
-        try (FileOutputStream outputStream = new FileOutputStream("output.txt", true)) {
+        /*try (FileOutputStream outputStream = new FileOutputStream("output.txt", true)) {
             FileInputStream inputStream = new FileInputStream("javase26.test.txt");
             byte[] bytes = new byte[10];
             int tmp;
@@ -247,7 +257,48 @@ public class Main {
             }
         } catch (IOException e) {
             e.printStackTrace();
+        }*/
+
+        try (FileOutputStream outputStream = new FileOutputStream("output.txt", true);
+             FileInputStream inputStream = new FileInputStream("javase26.test.txt")) {
+            System.out.println(DirectBufferPool.copy(inputStream.getChannel(), outputStream.getChannel())); // 通过通道拷贝 缓冲区从池中借用
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    static void test5() {
+
+        File file = new File("javase2.big.bin");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) { // 3GB的稀疏文件 实际不占用硬盘空间
+            randomAccessFile.setLength(3L << 30);
+            randomAccessFile.seek(randomAccessFile.length() - 5);
+            randomAccessFile.write("yxsnb".getBytes());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try (MappedFileInputStream inputStream = new MappedFileInputStream(file.toPath())) {
+            System.out.println(inputStream.size() + " " + inputStream.available()); // available()最多只能表示2GB
+            inputStream.seek(inputStream.size() - 5);
+            byte[] bytes = new byte[5];
+            System.out.println(inputStream.read(bytes) + " " + new String(bytes));
+
+            inputStream.seek(0); // 顺序读完整个文件
+            byte[] buffer = new byte[1 << 16];
+            long start = System.nanoTime();
+            long sum = 0;
+            int tmp;
+            while ((tmp = inputStream.read(buffer)) != -1) {
+                for (int i = 0; i < tmp; i++) sum += buffer[i];
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("字节和: %d 耗时%.2f秒 %.2f GB/s%n", sum, seconds, inputStream.size() / seconds / (1L << 30));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        file.delete();
 
     }
 
@@ -255,7 +306,8 @@ public class Main {
         //test1();
         //test2();
         //test3();
-        test4();
+        //test4();
+        test5();
     }
 
 }
@@ -0,0 +1,157 @@
+package javase2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 内存映射的文件输入流
+ * 用法和FileInputStream一样 但是数据不经过read系统调用复制 而是把文件映射到内存中直接读取 操作系统按需把文件页调入内存
+ * 一个MappedByteBuffer最多只能映射2GB 所以这里每次只映射一个窗口(默认64MB) 读到窗口外面时再映射下一个 文件多大都可以
+ *
+ * 除了顺序读取 还支持随机访问: seek()跳到任意位置 read(long)直接读取某个位置的字节 不影响当前位置
+ * 窗口是共享的 同一个流不要在多个线程中同时使用
+ */
+public class MappedFileInputStream extends InputStream {
+
+    static final int WINDOW = 64 << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private long mark;
+
+    public MappedFileInputStream(String name) throws IOException {
+        this(Paths.get(name), WINDOW);
+    }
+
+    public MappedFileInputStream(Path path) throws IOException {
+        this(path, WINDOW);
+    }
+
+    public MappedFileInputStream(Path path, int windowSize) throws IOException {
+
+        if (windowSize <= 0) throw new IllegalArgumentException("窗口大小必须大于0: " + windowSize); // 在打开文件之前检查 不会留下没有关闭的通道
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (position >= size) return -1;
+        return window(position).get((int) (position++ - windowStart)) & 0xff;
+
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        int n = read(position, b, off, len);
+        if (n > 0) position += n;
+        return n;
+
+    }
+
+    /**
+     * 读取文件中某个位置的字节 不改变当前位置 超出文件末尾时返回-1
+     */
+    public int read(long at) throws IOException {
+
+        if (at < 0) throw new IllegalArgumentException("位置不能为负数: " + at);
+        if (at >= size) return -1;
+        return window(at).get((int) (at - windowStart)) & 0xff;
+
+    }
+
+    /**
+     * 从文件中某个位置开始读取 不改变当前位置 一次最多读到窗口的末尾
+     */
+    public int read(long at, byte[] b, int off, int len) throws IOException {
+
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0) throw new IndexOutOfBoundsException();
+        if (at < 0) throw new IllegalArgumentException("位置不能为负数: " + at);
+        if (len == 0) return 0;
+        if (at >= size) return -1;
+
+        MappedByteBuffer window = window(at);
+        int index = (int) (at - windowStart);
+        int n = Math.min(len, window.limit() - index);
+        window.get(index, b, off, n);
+        return n;
+
+    }
+
+    @Override
+    public long skip(long n) {
+
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, Math.max(size - position, 0));
+        position += skipped;
+        return skipped;
+
+    }
+
+    public void seek(long position) {
+
+        if (position < 0) throw new IllegalArgumentException("位置不能为负数: " + position);
+        this.position = position;
+
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Math.max(size - position, 0), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) { // 随时都可以回到任意位置 readlimit没有意义
+        mark = position;
+    }
+
+    @Override
+    public void reset() {
+        position = mark;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        window = null; // 映射在MappedByteBuffer被回收时解除
+        channel.close();
+
+    }
+
+    private MappedByteBuffer window(long at) throws IOException { // 返回包含at的窗口 窗口按windowSize对齐
+
+        if (window != null && at >= windowStart && at < windowStart + window.limit()) return window;
+        if (!channel.isOpen()) throw new IOException("Stream closed");
+        windowStart = at - at % windowSize;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, size - windowStart));
+        return window;
+
+    }
+
+}
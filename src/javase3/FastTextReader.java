@@ -0,0 +1,273 @@
+package javase3;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 快速文本读取
+ * FileReader每次read都要经过InputStreamReader和StreamDecoder好几层 一次只读几个字符时大部分时间都花在了调用上
+ * 这里每次从FileChannel读取1MB 直接在byte数组上解码UTF-8: 连续的ASCII字符(日志中绝大多数)逐字节转换 遇到多字节字符才走完整的解码
+ * 其他编码交给CharsetDecoder 非法的字节序列替换为U+FFFD
+ *
+ * 除了作为普通的Reader使用 还可以按行或按空白分隔的单词遍历 nextLine() nextToken()返回的是指向内部缓冲区的CharSequence
+ * 不会为每一行创建String 需要保存时再调用toString() 返回的CharSequence在下一次调用前有效
+ *                  try (FastTextReader reader = new FastTextReader(Paths.get("app.log"))) {
+ *                      CharSequence line;
+ *                      while ((line = reader.nextLine()) != null) {
+ *                          if (line.length() > 0 && line.charAt(0) == 'E') errors++;
+ *                      }
+ *                  }
+ */
+public class FastTextReader extends Reader {
+
+    private static final int CHUNK = 1 << 20;
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder; // UTF-8时为null 使用下面手写的解码
+    private final ByteBuffer in = ByteBuffer.allocate(CHUNK);
+    private final byte[] bytes = in.array();
+    private int bytePosition;
+    private int byteLimit;
+    private boolean eof;
+    private boolean flushed;
+
+    private char[] chars = new char[CHUNK];
+    private int position;
+    private int limit;
+    private final Slice slice = new Slice();
+
+    public FastTextReader(Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), StandardCharsets.UTF_8);
+    }
+
+    public FastTextReader(Path path, Charset charset) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), charset);
+    }
+
+    public FastTextReader(FileChannel channel, Charset charset) {
+
+        this.channel = channel;
+        this.decoder = charset.equals(StandardCharsets.UTF_8) ? null : charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        if (len == 0) return 0;
+        if (position == limit && !fill()) return -1;
+        int n = Math.min(len, limit - position);
+        System.arraycopy(chars, position, cbuf, off, n);
+        position += n;
+        return n;
+
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (position == limit && !fill()) return -1;
+        return chars[position++];
+
+    }
+
+    /**
+     * 读取下一行(不含换行符) 文件结束时返回null
+     */
+    public CharSequence nextLine() throws IOException {
+
+        int i = position;
+        while (true) {
+            for (; i < limit; i++) {
+                if (chars[i] != '\n') continue;
+                int end = i > position && chars[i - 1] == '\r' ? i - 1 : i;
+                slice.set(position, end);
+                position = i + 1;
+                return slice;
+            }
+            int scanned = i - position;
+            if (!fill()) { // 最后一行没有换行符
+                if (position == limit) return null;
+                slice.set(position, limit);
+                position = limit;
+                return slice;
+            }
+            i = position + scanned;
+        }
+
+    }
+
+    /**
+     * 读取下一个以空白字符分隔的单词 文件结束时返回null
+     */
+    public CharSequence nextToken() throws IOException {
+
+        while (true) { // 跳过空白
+            while (position < limit && chars[position] <= ' ') position++;
+            if (position < limit) break;
+            if (!fill()) return null;
+        }
+
+        int i = position;
+        while (true) {
+            while (i < limit && chars[i] > ' ') i++;
+            if (i < limit) break;
+            int scanned = i - position;
+            boolean more = fill(); // fill()会把字符移到开头 i要重新计算
+            i = position + scanned;
+            if (!more) break;
+        }
+        slice.set(position, i);
+        position = i;
+        return slice;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean fill() throws IOException { // 把还没读的字符移到开头 再解码出更多字符 没有更多字符时返回false
+
+        if (position > 0) {
+            System.arraycopy(chars, position, chars, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (chars.length - limit < 2) chars = Arrays.copyOf(chars, chars.length * 2); // 一行比缓冲区还长 至少留出一对代理字符的位置 否则四字节的字符永远解码不出来
+
+        int before = limit;
+        while (true) {
+            if (decoder == null) decodeUtf8();
+            else decode();
+            if (limit > before) return true;
+            if (eof) return false;
+            readBytes();
+        }
+
+    }
+
+    private void readBytes() throws IOException {
+
+        System.arraycopy(bytes, bytePosition, bytes, 0, byteLimit - bytePosition); // 上次末尾不完整的字符留到这次
+        byteLimit -= bytePosition;
+        bytePosition = 0;
+        in.limit(in.capacity()).position(byteLimit);
+        int n = channel.read(in);
+        if (n < 0) eof = true;
+        else byteLimit += n;
+
+    }
+
+    private void decodeUtf8() {
+
+        byte[] b = bytes;
+        char[] c = chars;
+        int bp = bytePosition, bl = byteLimit;
+        int cp = limit, cl = c.length;
+        while (bp < bl && cp < cl) {
+            int end = bp + Math.min(bl - bp, cl - cp);
+            while (bp < end && b[bp] >= 0) c[cp++] = (char) b[bp++]; // ASCII 快速路径
+            if (bp == end) continue;
+
+            int b0 = b[bp] & 0xff;
+            int length = b0 >= 0xF5 ? 0 : b0 >= 0xF0 ? 4 : b0 >= 0xE0 ? 3 : b0 >= 0xC2 ? 2 : 0;
+            if (length == 0) { // 单独出现的后续字节 或者不可能出现的首字节
+                c[cp++] = '\uFFFD';
+                bp++;
+                continue;
+            }
+            if (length == 4 && cp + 2 > cl) break;
+
+            // 第二个字节的范围排除了过长的编码和超出0x10FFFF的码点 不合法时把已经匹配的部分替换为一个U+FFFD (与JDK的解码器一致)
+            int low = b0 == 0xE0 ? 0xA0 : b0 == 0xF0 ? 0x90 : 0x80;
+            int high = b0 == 0xF4 ? 0x8F : 0xBF;
+            int code = b0 & (0x7F >> length);
+            int k = 1;
+            for (; k < length && bp + k < bl; k++) {
+                int next = b[bp + k] & 0xff;
+                if (next < low || next > high) break;
+                code = code << 6 | next & 0x3F;
+                low = 0x80;
+                high = 0xBF;
+            }
+            if (k < length) {
+                if (bp + k == bl && !eof) break; // 字符被分在了两次读取中 等读到后面的字节再解码
+                c[cp++] = '\uFFFD';
+                bp += k;
+                continue;
+            }
+            if (length == 3 && Character.isSurrogate((char) code)) code = 0xFFFD; // 代理区的码点不能单独编码
+            if (length < 4) {
+                c[cp++] = (char) code;
+            } else {
+                c[cp++] = Character.highSurrogate(code);
+                c[cp++] = Character.lowSurrogate(code);
+            }
+            bp += length;
+        }
+        bytePosition = bp;
+        limit = cp;
+
+    }
+
+    private void decode() { // 其他编码
+
+        if (flushed) return;
+        in.limit(byteLimit).position(bytePosition);
+        CharBuffer out = CharBuffer.wrap(chars, limit, chars.length - limit);
+        if (decoder.decode(in, out, eof).isUnderflow() && eof) flushed = decoder.flush(out).isUnderflow(); // 输出满了时下次再flush
+        bytePosition = in.position();
+        limit = out.position();
+
+    }
+
+    private class Slice implements CharSequence { // 指向chars中的一段 不复制
+
+        private int start;
+        private int end;
+
+        void set(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+
+            if (index < 0 || index >= end - start) throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+            return chars[start + index];
+
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, start, end - start);
+        }
+
+    }
+
+}
@@ -1,8 +1,21 @@
 package javase3;
 
+import javase4.DirectBufferPool;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 文件字符流
@@ -45,6 +58,11 @@ import java.io.IOException;
  * append()支持SpringBuilder那样的链式调用 返回的是Writer对象本身
  *
  * 练习: 尝试一下用Reader和Writer来拷贝纯文本文件
+ *
+ * 如果读写使用的是同一种编码 拷贝时其实不需要把字节解码成字符再编码回去 直接拷贝字节即可 (见test3 使用javase4.DirectBufferPool)
+ *
+ * FileReader一次只读几个字符时 大部分时间都花在层层调用上 读取很大的文本文件(比如日志)时可以使用FastTextReader:
+ * 大块读取 ASCII字符走快速路径解码 按行或按单词遍历时不创建String (见test4)
  */
 public class Main {
 
@@ -83,7 +101,7 @@ public class Main {
             e.printStackTrace();
         }*/
 
-        try (FileReader reader = new FileReader("javase26.test.txt");
+        /*try (FileReader reader = new FileReader("javase26.test.txt");
              FileWriter writer = new FileWriter("output.txt")) {
 
             char[] chars = new char[10];
@@ -94,14 +112,84 @@ public class Main {
             writer.flush();
         } catch (IOException e) {
             e.printStackTrace();
+        }*/
+
+        try (FileInputStream inputStream = new FileInputStream("javase26.test.txt");
+             FileOutputStream outputStream = new FileOutputStream("output.txt")) { // FileReader和FileWriter的默认编码相同 直接拷贝字节
+
+            DirectBufferPool.copy(inputStream.getChannel(), outputStream.getChannel());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    static void test4() {
+
+        Path path = Paths.get("javase3.log");
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) { // 生成一个日志文件
+            for (int i = 0; i < 2_000_000; i++) writer.write((i % 100 == 0 ? "ERROR" : "INFO") + " 2024-01-01 12:00:00 请求" + i + " 处理完成 耗时" + i % 37 + "ms\n");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int errors = 0;
+            try (BufferedReader reader = new BufferedReader(new FileReader(path.toFile(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) if (line.startsWith("ERROR")) errors++;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            long middle = System.nanoTime();
+            int fastErrors = 0;
+            try (FastTextReader reader = new FastTextReader(path)) {
+                CharSequence line;
+                while ((line = reader.nextLine()) != null) if (line.length() > 0 && line.charAt(0) == 'E') fastErrors++;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            long end = System.nanoTime();
+            double megabytes = path.toFile().length() / 1048576.0;
+            System.out.printf("BufferedReader: %d个ERROR %.0fMB/s FastTextReader: %d个ERROR %.0fMB/s%n",
+                    errors, megabytes / ((middle - start) / 1e9), fastErrors, megabytes / ((end - middle) / 1e9));
+        }
+        path.toFile().delete();
+
+    }
+
+    static void test5() {
+
+        Path path = Paths.get("javase3.boundary.txt");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < (1 << 20) - 1; i++) builder.append('a'); // 缓冲区只剩一个位置时遇到需要两个char的字符
+        builder.append("\uD83D\uDE00tail\n");
+        for (int i = 0; i < 10; i++) builder.append("第").append(i).append("行 \uD83C\uDF5C\n");
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16LE}) { // UTF-8用手写的解码 UTF-16用CharsetDecoder
+            try {
+                Files.write(path, builder.toString().getBytes(charset));
+                List<String> expected = Files.readAllLines(path, charset);
+                List<String> lines = new ArrayList<>();
+                try (FastTextReader reader = new FastTextReader(path, charset)) {
+                    CharSequence line;
+                    while ((line = reader.nextLine()) != null) lines.add(line.toString());
+                }
+                System.out.println(charset + ": " + lines.size() + "行 " + (lines.equals(expected) ? "与BufferedReader一致" : "不一致"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+        path.toFile().delete();
 
     }
 
     public static void main(String[] args) {
         // test1();
         //test2();
-        test3();
+        //test3();
+        //test4();
+        test5();
     }
 
 }
@@ -0,0 +1,180 @@
+package javase4;
+
+import javase5.CompressedOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文件夹拷贝引擎
+ * 每个文件通过FileChannel.transferTo拷贝 在Linux等系统上数据直接在内核中从源文件送到目标文件 不需要先读到用户空间的数组再写出去
+ * 遍历文件夹的线程只负责创建目录和分发任务 文件由线程池并行拷贝 大量小文件时打开 关闭文件的开销也能分摊到多个线程上
+ * 任务队列是有界的 队列满时由遍历线程自己拷贝 不会因为文件太多而把所有任务都堆在内存里
+ *
+ * transferTo在某些文件系统上不能传输数据(返回0) 这时改用直接缓冲区读写(见DirectBufferPool)
+ * 符号链接不跟随 拷贝的是链接本身 目标文件夹不能在源文件夹之内 否则会把刚拷贝出来的文件再拷贝一遍
+ *
+ * compress(true)时每个文件压缩后保存为 原文件名.lzb (见javase5.CompressedOutputStream) 适合备份 磁盘慢而CPU有空闲时写入的数据量更少
+ * 读取时用javase5.CompressedInputStream解压
+ */
+public class CopyEngine {
+
+    private static final int QUEUE = 1024;
+    static final String SUFFIX = ".lzb";
+
+    private final int threads;
+    private boolean compress;
+
+    public CopyEngine(int threads) {
+        this.threads = threads;
+    }
+
+    public CopyEngine compress(boolean compress) {
+
+        this.compress = compress;
+        return this;
+
+    }
+
+    public Result copy(Path source, Path target) throws IOException {
+
+        if (target.toAbsolutePath().normalize().startsWith(source.toAbsolutePath().normalize())) throw new IllegalArgumentException("目标文件夹不能在源文件夹之内: " + target);
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE), new ThreadPoolExecutor.CallerRunsPolicy());
+        LongAdder files = new LongAdder();
+        LongAdder bytes = new LongAdder();
+        LongAdder written = new LongAdder(); // 写入目标文件的字节数 压缩时比bytes少
+        AtomicReference<IOException> error = new AtomicReference<>();
+        long start = System.nanoTime();
+
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                    return error.get() == null ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    Path to = target.resolve(source.relativize(file).toString());
+                    workers.execute(() -> {
+                        try {
+                            if (compress && attrs.isRegularFile()) {
+                                bytes.add(copyCompressed(file, to.resolveSibling(to.getFileName() + SUFFIX), written));
+                            } else {
+                                long n = attrs.isRegularFile() ? copyFile(file, to) : copyOther(file, to);
+                                bytes.add(n);
+                                written.add(n);
+                            }
+                            files.increment();
+                        } catch (IOException e) {
+                            error.compareAndSet(null, e);
+                        }
+                    });
+                    return error.get() == null ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+            });
+        } finally {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (error.get() != null) throw error.get();
+        return new Result(files.sum(), bytes.sum(), written.sum(), System.nanoTime() - start);
+
+    }
+
+    static long copyFile(Path from, Path to) throws IOException {
+
+        try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long n = in.transferTo(position, size - position, out);
+                if (n <= 0) return position + copyBuffered(in, out, position); // 不支持零拷贝 或者文件在拷贝时被截断了
+                position += n;
+            }
+            return position;
+        }
+
+    }
+
+    private static long copyBuffered(FileChannel in, FileChannel out, long position) throws IOException {
+
+        in.position(position);
+        out.position(position);
+        return DirectBufferPool.copy(in, out); // 缓冲区从池中借用 并行拷贝时每个线程都有自己缓存的缓冲区
+
+    }
+
+    private static long copyCompressed(Path from, Path to, LongAdder written) throws IOException { // 返回原文件的字节数
+
+        try (InputStream in = Files.newInputStream(from);
+             CompressedOutputStream out = new CompressedOutputStream(Files.newOutputStream(to))) {
+            long n = in.transferTo(out);
+            out.finish();
+            written.add(out.written());
+            return n;
+        }
+
+    }
+
+    private static long copyOther(Path from, Path to) throws IOException { // 符号链接等非普通文件 不跟随链接
+
+        Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+        return Files.readAttributes(to, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).size();
+
+    }
+
+    public static class Result {
+
+        public final long files;
+        public final long bytes;
+        public final long written;
+        public final long nanos;
+
+        Result(long files, long bytes, long written, long nanos) {
+            this.files = files;
+            this.bytes = bytes;
+            this.written = written;
+            this.nanos = nanos;
+        }
+
+        public double gigabytesPerSecond() {
+            return bytes / (nanos / 1e9) / (1L << 30);
+        }
+
+        public double filesPerSecond() {
+            return files / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("拷贝了%d个文件 共%.2fMB 写入%.2fMB 耗时%.3f秒 %.3f GB/s %.0f 个文件/秒",
+                    files, bytes / 1048576.0, written / 1048576.0, nanos / 1e9, gigabytesPerSecond(), filesPerSecond());
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package javase4;
+
+import javase5.SizeClassPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 直接缓冲区池
+ * 直接缓冲区(ByteBuffer.allocateDirect)在堆外 通过通道读写时不需要再复制到临时的堆外内存 但是分配和释放都很慢 所以要重复使用
+ * 缓冲区按2的幂分成若干个大小等级 每个线程先从自己的缓存中取 取不到再去全局队列 都没有才分配新的 并发时大多数操作不需要竞争 (与堆上的BufferPool共用javase5.SizeClassPool)
+ * 取到的缓冲区容量可能比要求的大 已经clear()过 用完后调用release()归还 超过最大等级的缓冲区不进池
+ *
+ * copy()用池中的缓冲区在两个通道之间拷贝数据 拷贝过程中不分配任何对象
+ */
+public class DirectBufferPool {
+
+    private static final DirectBufferPool SHARED = new DirectBufferPool(4096, 1 << 20, 64, 4);
+    private static final int COPY_BUFFER = 1 << 16;
+
+    private final SizeClassPool<ByteBuffer> classes;
+
+    /**
+     * @param retain 每个等级在全局队列中最多保留的数量
+     * @param local  每个等级在每个线程的缓存中最多保留的数量
+     */
+    public DirectBufferPool(int minSize, int maxSize, int retain, int local) {
+        this.classes = new SizeClassPool<>(minSize, maxSize, retain, local, ByteBuffer::allocateDirect, ByteBuffer::capacity);
+    }
+
+    public static DirectBufferPool shared() {
+        return SHARED;
+    }
+
+    public ByteBuffer acquire(int size) {
+        return classes.acquire(size).clear();
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect()) classes.release(buffer);
+    }
+
+    public long hits() {
+        return classes.hits();
+    }
+
+    public long misses() {
+        return classes.misses();
+    }
+
+    @Override
+    public String toString() {
+        return "DirectBufferPool{命中" + hits() + "次 新分配" + misses() + "次}";
+    }
+
+    /**
+     * 从in读到末尾 全部写入out 返回拷贝的字节数 两个通道都不会被关闭
+     */
+    public static long copy(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+
+        ByteBuffer buffer = SHARED.acquire(COPY_BUFFER);
+        try {
+            long copied = 0;
+            while (in.read(buffer) != -1 || buffer.position() > 0) {
+                buffer.flip();
+                copied += out.write(buffer);
+                buffer.compact(); // 没写完的部分留到下一轮
+            }
+            return copied;
+        } finally {
+            SHARED.release(buffer);
+        }
+
+    }
+
+}
@@ -0,0 +1,296 @@
+package javase4;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 并行遍历文件夹
+ * File.listFiles()会一次性把整个文件夹的内容放进一个数组 而这里每个文件夹用DirectoryStream边读边处理 子文件夹作为新任务交给ForkJoinPool 所有核心一起遍历
+ * 结果通过有界队列交给调用者 调用者处理得慢时遍历线程会等待 所以无论树有多大 内存中最多只有队列长度那么多个结果
+ *
+ * 可以限制深度(根目录下的直接子项深度为1) 按文件名过滤(glob 例如 *.txt) 遍历时统计文件数 文件夹数 匹配的文件总大小
+ * 不跟随符号链接 避免链接成环 没有权限访问的文件夹计入errors后跳过 其他异常会结束遍历 调用者读到最后时抛出
+ * 遍历线程等待队列时通过ForkJoinPool.managedBlock告诉线程池 线程池会临时补充线程 使用公共线程池时也不会拖住其他任务
+ *
+ *                  FileWalker walker = new FileWalker(Paths.get("/")).maxDepth(2).glob("*.conf");
+ *                  try (Stream<FileWalker.Entry> entries = walker.stream()) {
+ *                      entries.forEach(entry -> System.out.println(entry.path));
+ *                  }
+ *                  System.out.println(walker.stats());
+ */
+public class FileWalker {
+
+    private static final Object END = new Object();
+
+    private final Path root;
+    private int maxDepth = Integer.MAX_VALUE;
+    private PathMatcher matcher;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int queueSize = 4096;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private BlockingQueue<Object> queue;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    public FileWalker(Path root) {
+        this.root = root;
+    }
+
+    public FileWalker maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public FileWalker glob(String glob) { // 只匹配文件名 与find -name相同
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return this;
+    }
+
+    public FileWalker pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public FileWalker queueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * 开始遍历 每个FileWalker只能调用一次 提前结束时要关闭Stream 否则遍历线程会一直等待队列空出位置
+     */
+    public Stream<Entry> stream() {
+
+        if (queue != null) throw new IllegalStateException("已经开始遍历了");
+        queue = new ArrayBlockingQueue<>(queueSize);
+        pool.execute(new Scan(null, root, 1));
+
+        Iterator<Entry> iterator = new Iterator<Entry>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+
+                if (next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancelled = true;
+                        next = END;
+                    }
+                }
+                if (next == END && failure != null) throw new IllegalStateException("遍历" + root + "时出错", failure);
+                return next != END;
+
+            }
+
+            @Override
+            public Entry next() {
+
+                if (!hasNext()) throw new NoSuchElementException();
+                Entry entry = (Entry) next;
+                next = null;
+                return entry;
+
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(() -> cancelled = true);
+
+    }
+
+    public long files() {
+        return files.sum();
+    }
+
+    public long directories() {
+        return directories.sum();
+    }
+
+    public long matched() {
+        return matched.sum();
+    }
+
+    public long bytes() {
+        return bytes.sum();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    public String stats() {
+        return String.format("文件%d个 文件夹%d个 匹配%d项 共%.2fMB 无法访问%d项", files(), directories(), matched(), bytes() / 1048576.0, errors());
+    }
+
+    private void put(Object item) { // 队列满时等待调用者取走 调用者关闭Stream后直接丢弃
+
+        try {
+            ForkJoinPool.managedBlock(new Offer(item));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        }
+
+    }
+
+    private void end() { // 只发出一次结束标记 结束标记不能丢 调用者已经关闭Stream时清空队列给它腾出位置
+
+        if (!ended.compareAndSet(false, true)) return;
+        try {
+            ForkJoinPool.managedBlock(new Offer(END));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    private class Offer implements ForkJoinPool.ManagedBlocker { // 在线程池中等待队列空出位置
+
+        private final Object item;
+        private boolean done;
+
+        Offer(Object item) {
+            this.item = item;
+        }
+
+        @Override
+        public boolean isReleasable() {
+
+            if (!done && cancelled) {
+                if (item != END) return done = true; // 丢弃
+                queue.clear();
+            }
+            return done || (done = queue.offer(item));
+
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+
+            while (!isReleasable()) {
+                if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) done = true;
+            }
+            return true;
+
+        }
+
+    }
+
+    public static class Entry {
+
+        public final Path path;
+        public final BasicFileAttributes attributes;
+        public final int depth;
+
+        Entry(Path path, BasicFileAttributes attributes, int depth) {
+            this.path = path;
+            this.attributes = attributes;
+            this.depth = depth;
+        }
+
+        @Override
+        public String toString() {
+            return path.toString();
+        }
+
+    }
+
+    private class Scan extends CountedCompleter<Void> { // 遍历一个文件夹 每个子文件夹派生一个子任务 所有子任务完成后根任务发出结束标记
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final int depth;
+
+        Scan(CountedCompleter<?> parent, Path dir, int depth) {
+            super(parent);
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        public void compute() {
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    if (cancelled) break;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        errors.increment();
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        directories.increment();
+                        if (depth < maxDepth) {
+                            addToPendingCount(1);
+                            new Scan(this, path, depth + 1).fork();
+                        }
+                    } else {
+                        files.increment();
+                    }
+                    if (matcher == null || matcher.matches(path.getFileName())) {
+                        matched.increment();
+                        if (!attributes.isDirectory()) bytes.add(attributes.size());
+                        put(new Entry(path, attributes, depth));
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                errors.increment();
+            }
+            tryComplete();
+
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+
+            if (getCompleter() == null) end();
+
+        }
+
+        @Override
+        public boolean onExceptionalCompletion(Throwable ex, CountedCompleter<?> caller) { // 异常一直传到根任务 根任务记下异常并发出结束标记
+
+            if (getCompleter() == null) {
+                if (failure == null) failure = ex;
+                cancelled = true; // 其他还在遍历的任务尽快停下
+                end();
+            }
+            return true;
+
+        }
+
+    }
+
+}
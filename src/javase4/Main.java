@@ -1,7 +1,9 @@
 package javase4;
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.stream.Stream;
 
 /**
  * File类
@@ -29,7 +31,18 @@ import java.util.Arrays;
  *                      e.printStackTrace();
  *                  }
  *
+ * listFiles()会一次性把整个文件夹的内容放进数组 遍历很大的目录树时可以使用FileWalker: 并行 流式输出 可以限制深度和按文件名过滤
+ *
  * 练习: 尝试拷贝文件夹下的所有文件到另一个文件夹
+ *
+ * 用BufferedInputStream和1024字节的数组逐个拷贝时 每个字节都要先从内核复制到数组 再从数组复制回内核 而且一次只拷贝一个文件
+ *                  byte[] bytes = new byte[1024];
+ *                  int tmp;
+ *                  while ((tmp = inputStream.read(bytes)) != -1) {
+ *                      outputStream.write(bytes, 0, tmp);
+ *                  }
+ * 文件很多或者很大时 瓶颈在CPU而不是硬盘 test4改用CopyEngine: FileChannel.transferTo零拷贝 递归遍历子文件夹 多个文件并行拷贝 最后输出GB/s和文件/秒
+ * 还可以让CopyEngine在拷贝时压缩每个文件 写入的数据量更少 (见javase5.CompressedOutputStream)
  */
 public class Main {
 
@@ -49,9 +62,12 @@ public class Main {
 
         File file = new File("/");
         System.out.println(Arrays.toString(file.list()));
-        for (File f : file.listFiles()) {
-            System.out.println(f.getAbsolutePath());
+
+        FileWalker walker = new FileWalker(file.toPath()).maxDepth(1); // 不再一次性创建File[] 边遍历边输出 (见FileWalker)
+        try (Stream<FileWalker.Entry> entries = walker.stream()) {
+            entries.forEach(entry -> System.out.println(entry.path.toAbsolutePath()));
         }
+        System.out.println(walker.stats());
 
     }
 
@@ -68,30 +84,22 @@ public class Main {
 
     static void test4() {
 
-        File file = new File("YXS/");
-        File target = new File("newYXS/");
-        target.mkdir();
-        for (File f : file.listFiles()) {
-            try (BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(f));
-                 BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(target.getPath() + f.getName()))) {
-
-                byte[] bytes = new byte[1024];
-                int tmp;
-                while ((tmp = inputStream.read(bytes)) != -1) {
-                    outputStream.write(bytes, 0, tmp);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        try { // 零拷贝 + 多线程 (见CopyEngine)
+            CopyEngine.Result result = new CopyEngine(Runtime.getRuntime().availableProcessors()).copy(Paths.get("YXS"), Paths.get("newYXS"));
+            System.out.println(result);
+            result = new CopyEngine(Runtime.getRuntime().availableProcessors()).compress(true).copy(Paths.get("YXS"), Paths.get("compressedYXS")); // 压缩后保存
+            System.out.println(result);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
 
     }
 
     public static void main(String[] args) {
         //test1();
-        //test2();
+        test2();
         //test3();
-        test4();
+        //test4();
     }
 
 }
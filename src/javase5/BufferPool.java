@@ -0,0 +1,47 @@
+package javase5;
+
+/**
+ * 缓冲区池
+ * 每个缓冲流都会创建自己的缓冲数组 同时打开成千上万个流时 这些数组会频繁地分配和回收 给GC带来很大压力
+ * 这里把数组按2的幂分成若干个大小等级 流关闭时把数组还回来 下一个流直接取用 每个等级最多保留retain个 不会无限增长
+ * 超过最大等级的数组不进池 用完直接交给GC 大小等级的管理见SizeClassPool
+ */
+public class BufferPool {
+
+    private static final BufferPool SHARED = new BufferPool(512, 1 << 20, 256);
+
+    private final SizeClassPool<byte[]> classes;
+
+    public BufferPool(int minSize, int maxSize, int retain) {
+        this.classes = new SizeClassPool<>(minSize, maxSize, retain, 0, byte[]::new, buffer -> buffer.length);
+    }
+
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * 取出一个长度至少为size的数组 (长度会向上取整为2的幂)
+     */
+    public byte[] acquire(int size) {
+        return classes.acquire(size);
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer != null) classes.release(buffer);
+    }
+
+    public long hits() {
+        return classes.hits();
+    }
+
+    public long misses() {
+        return classes.misses();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{命中" + hits() + "次 新分配" + misses() + "次}";
+    }
+
+}
@@ -0,0 +1,229 @@
+package javase5;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 解压输入流 读取CompressedOutputStream写入的数据
+ * 读取压缩的块只能按顺序进行 但每一块都是独立压缩的 所以解压可以并行: 调用者读取到第n块时 后面的prefetch-1块已经在公共线程池中解压了
+ * prefetch为1时不使用线程池 在调用者线程中解压
+ *
+ * 不确定一个文件有没有压缩时 可以使用detect() 它会检查开头的魔数 没有压缩的文件原样读取
+ *                  try (InputStream in = CompressedInputStream.detect(new FileInputStream("data"))) {
+ *                      ...
+ *                  }
+ */
+public class CompressedInputStream extends FilterInputStream {
+
+    private final BufferPool pool = BufferPool.shared();
+    private final int prefetch;
+    private final ArrayDeque<CompletableFuture<Block>> pending = new ArrayDeque<>();
+    private final byte[] header = new byte[8];
+    private Block block;
+    private int position;
+    private boolean eof;
+
+    public CompressedInputStream(InputStream in) throws IOException {
+        this(in, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public CompressedInputStream(InputStream in, int prefetch) throws IOException {
+
+        super(in);
+        this.prefetch = Math.max(1, prefetch);
+        readFully(header, 4);
+        if (readInt(header, 0) != CompressedOutputStream.MAGIC) throw new IOException("不是CompressedOutputStream写入的数据");
+
+    }
+
+    /**
+     * 开头是压缩流的魔数时返回CompressedInputStream 否则返回一个缓冲流 从头读取原来的数据
+     */
+    public static InputStream detect(InputStream in) throws IOException {
+
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, 1 << 16);
+        buffered.mark(4);
+        byte[] magic = new byte[4];
+        int n = buffered.readNBytes(magic, 0, 4);
+        buffered.reset();
+        return n == 4 && readInt(magic, 0) == CompressedOutputStream.MAGIC ? new CompressedInputStream(buffered) : buffered;
+
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (!ensure()) return -1;
+        return block.data[position++] & 0xff;
+
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (!ensure()) return -1;
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block.data, position, b, off, n);
+        position += n;
+        return n;
+
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        long skipped = 0;
+        while (skipped < n && ensure()) {
+            int step = (int) Math.min(n - skipped, block.length - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+
+    }
+
+    @Override
+    public int available() {
+        return block == null ? 0 : block.length - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        for (CompletableFuture<Block> future : pending) { // 等还在解压的块结束 把缓冲区还回去
+            try {
+                future.get().release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+            }
+        }
+        pending.clear();
+        if (block != null) block.release();
+        block = null;
+        in.close();
+
+    }
+
+    private boolean ensure() throws IOException { // 当前块读完时换到下一块 没有更多数据时返回false
+
+        if (block != null && position < block.length) return true;
+        if (block != null) block.release();
+        block = null;
+        while (!eof && pending.size() < prefetch) { // 保持后面有prefetch块在解压
+            Block next = readBlock();
+            if (next == null) break;
+            pending.add(prefetch == 1 ? CompletableFuture.completedFuture(next.decompress()) : CompletableFuture.supplyAsync(() -> {
+                try {
+                    return next.decompress();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        if (pending.isEmpty()) return false;
+
+        try {
+            block = pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("读取被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof UncheckedIOException ? ((UncheckedIOException) cause).getCause() : new IOException(cause);
+        }
+        position = 0;
+        return true;
+
+    }
+
+    private Block readBlock() throws IOException { // 读取下一块压缩的数据 遇到结束标记时返回null
+
+        readFully(header, 8);
+        int length = readInt(header, 0), compressedLength = readInt(header, 4);
+        if (length == 0) {
+            eof = true;
+            return null;
+        }
+        if (length < 0 || length > CompressedOutputStream.MAX_BLOCK || compressedLength <= 0 || compressedLength > Lz4Block.maxCompressedLength(length)) throw new IOException("压缩数据已损坏");
+        Block block = new Block(length, compressedLength);
+        readFully(block.source, compressedLength);
+        return block;
+
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        if (in.readNBytes(b, 0, len) < len) throw new EOFException("压缩数据不完整");
+    }
+
+    static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) << 24 | (b[i + 1] & 0xff) << 16 | (b[i + 2] & 0xff) << 8 | b[i + 3] & 0xff;
+    }
+
+    private class Block {
+
+        final int length;
+        final int compressedLength;
+        byte[] source;
+        byte[] data;
+
+        Block(int length, int compressedLength) {
+
+            this.length = length;
+            this.compressedLength = compressedLength;
+            this.source = pool.acquire(compressedLength);
+
+        }
+
+        Block decompress() throws IOException {
+
+            if (compressedLength == length) { // 保存的是原始数据
+                data = source;
+                source = null;
+                return this;
+            }
+            data = pool.acquire(length);
+            try {
+                Lz4Block.decompress(source, 0, compressedLength, data, 0, length);
+            } finally {
+                pool.release(source);
+                source = null;
+            }
+            return this;
+
+        }
+
+        void release() {
+
+            pool.release(source);
+            pool.release(data);
+            source = data = null;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+package javase5;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 压缩输出流
+ * 写入的数据先攒满一块(默认256KB) 再用LZ4格式压缩(见Lz4Block)后写到底层流 读取时使用CompressedInputStream
+ * 文件开头是4个字节的魔数 之后每一块是: 原始长度 压缩后长度 压缩后的数据 压缩后反而更大的块直接保存原始数据(两个长度相等)
+ * 最后以原始长度为0的块结束
+ *
+ * 块与块之间互不依赖 读取时可以并行解压 缓冲数组从BufferPool中借用 关闭时归还
+ * finish()写完剩下的数据和结束标记 但不关闭底层流 (例如之后还要对文件调用sync)
+ */
+public class CompressedOutputStream extends FilterOutputStream {
+
+    static final int MAGIC = 0x4C5A424B; // "LZBK"
+    static final int BLOCK = 256 << 10;
+    static final int MAX_BLOCK = 16 << 20; // 读取时超过这个长度的块当作损坏的数据 不会按头部的长度去分配内存
+
+    private final BufferPool pool = BufferPool.shared();
+    private final int[] table = new int[1 << Lz4Block.HASH_BITS];
+    private byte[] buffer;
+    private byte[] compressed;
+    private int count;
+    private boolean finished;
+    private long written = 4;
+
+    public CompressedOutputStream(OutputStream out) throws IOException {
+        this(out, BLOCK);
+    }
+
+    public CompressedOutputStream(OutputStream out, int blockSize) throws IOException {
+
+        super(out);
+        if (blockSize <= 0 || blockSize > MAX_BLOCK) throw new IllegalArgumentException("块大小必须在1到" + MAX_BLOCK + "之间");
+        this.buffer = pool.acquire(blockSize);
+        this.compressed = pool.acquire(Lz4Block.maxCompressedLength(buffer.length) + 8);
+        writeInt(compressed, 0, MAGIC);
+        out.write(compressed, 0, 4);
+
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+
+        if (finished) throw new IOException("Stream finished");
+        if (count == buffer.length) writeBlock();
+        buffer[count++] = (byte) b;
+
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        if (finished) throw new IOException("Stream finished");
+        while (len > 0) {
+            if (count == buffer.length) writeBlock();
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+
+    }
+
+    /**
+     * 把缓冲的数据压缩成一块写出 数据较少时会产生比较小的块 压缩率会低一些
+     */
+    @Override
+    public void flush() throws IOException {
+
+        if (count > 0) writeBlock();
+        out.flush();
+
+    }
+
+    /**
+     * 写入剩下的数据和结束标记 之后不能再写入
+     */
+    public void finish() throws IOException {
+
+        if (finished) return;
+        if (count > 0) writeBlock();
+        writeInt(compressed, 0, 0);
+        writeInt(compressed, 4, 0);
+        out.write(compressed, 0, 8);
+        written += 8;
+        out.flush();
+        finished = true;
+
+    }
+
+    /**
+     * 到目前为止写到底层流中的字节数
+     */
+    public long written() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (buffer == null) return;
+        try {
+            finish();
+        } finally {
+            pool.release(buffer);
+            pool.release(compressed);
+            buffer = null;
+            compressed = null;
+            out.close();
+        }
+
+    }
+
+    private void writeBlock() throws IOException {
+
+        if (finished) throw new IOException("Stream finished");
+        int length = Lz4Block.compress(buffer, 0, count, compressed, 8, table);
+        writeInt(compressed, 0, count);
+        if (length >= count) { // 不可压缩的数据 保存原始数据
+            writeInt(compressed, 4, count);
+            out.write(compressed, 0, 8);
+            out.write(buffer, 0, count);
+            length = count;
+        } else {
+            writeInt(compressed, 4, length);
+            out.write(compressed, 0, 8 + length);
+        }
+        written += 8 + length;
+        count = 0;
+
+    }
+
+    static void writeInt(byte[] b, int i, int v) {
+
+        b[i] = (byte) (v >>> 24);
+        b[i + 1] = (byte) (v >>> 16);
+        b[i + 2] = (byte) (v >>> 8);
+        b[i + 3] = (byte) v;
+
+    }
+
+}
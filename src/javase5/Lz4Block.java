@@ -0,0 +1,191 @@
+package javase5;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * LZ4格式的块压缩 (纯Java实现 压缩和解压都只用到数组操作)
+ * 压缩后的数据由若干个序列组成 每个序列是: 一个标记字节(高4位是字面量长度 低4位是匹配长度-4) 字面量 2字节的偏移 (长度达到15时后面追加若干字节)
+ * 解压时字面量直接复制 匹配部分从已经解压出的数据中往前偏移若干字节复制 所以解压非常快
+ *
+ * 压缩时用一个哈希表记住每4个字节最近出现的位置 遇到相同的4个字节时尽量向前后扩展匹配 找不到匹配时步长逐渐加大 跳过不可压缩的数据
+ * 每一块都单独压缩 不引用其他块的数据 因此各个块可以并行解压(见CompressedInputStream)
+ */
+final class Lz4Block {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5; // 最后5个字节必须是字面量
+    private static final int MF_LIMIT = 12; // 距离末尾不足12个字节时不再开始新的匹配
+    private static final int MAX_DISTANCE = 65535;
+    static final int HASH_BITS = 14;
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN); // 一次读取4个 8个字节
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private Lz4Block() {
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * 压缩src中的一块 写入dst 返回压缩后的长度 dst至少要有maxCompressedLength(length)个字节
+     * table是压缩用的哈希表 长度为1 << HASH_BITS 可以在多次压缩之间复用
+     */
+    static int compress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int[] table) {
+
+        int end = offset + length;
+        int matchLimit = end - LAST_LITERALS;
+        int mfLimit = end - MF_LIMIT;
+        int anchor = offset; // 还没有输出的字面量从这里开始
+        int ip = offset + 1;
+        int op = dstOffset;
+
+        if (length > MF_LIMIT) {
+            Arrays.fill(table, -1);
+            table[hash(readInt(src, offset))] = offset;
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int h = hash(sequence);
+                int ref = table[h];
+                table[h] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip += 1 + ((ip - anchor) >>> 6); // 越久没有找到匹配 跳得越远
+                    continue;
+                }
+
+                while (ip > anchor && ref > offset && src[ip - 1] == src[ref - 1]) { // 向前扩展
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength + 8 <= matchLimit) { // 每次比较8个字节 不相等时由最低的不同位算出相同的字节数
+                    long difference = (long) LONG.get(src, ip + matchLength) ^ (long) LONG.get(src, ref + matchLength);
+                    if (difference != 0) {
+                        matchLength += Long.numberOfTrailingZeros(difference) >>> 3;
+                        break;
+                    }
+                    matchLength += 8;
+                }
+                if (ip + matchLength + 8 > matchLimit) {
+                    while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+                if (ip < mfLimit) table[hash(readInt(src, ip - 2))] = ip - 2;
+            }
+        }
+
+        int literals = end - anchor; // 剩下的全部作为字面量
+        op = writeLength(dst, op, literals);
+        System.arraycopy(src, anchor, dst, op, literals);
+        return op + literals - dstOffset;
+
+    }
+
+    /**
+     * 把压缩的数据解压到dst中 解压后的长度必须正好是length
+     */
+    static void decompress(byte[] src, int offset, int compressedLength, byte[] dst, int dstOffset, int length) throws IOException {
+
+        int ip = offset, end = offset + compressedLength;
+        int op = dstOffset, dstEnd = dstOffset + length;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xff;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (literals > end - ip || literals > dstEnd - op) throw new IOException("压缩数据已损坏");
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == end) break; // 最后一个序列只有字面量
+
+                int distance = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - distance;
+                if (distance == 0 || ref < dstOffset || matchLength > dstEnd - op) throw new IOException("压缩数据已损坏");
+                while (matchLength > 0) { // 偏移小于长度时是重复的模式 每次复制已经复制好的部分 长度翻倍
+                    int n = Math.min(matchLength, op - ref);
+                    System.arraycopy(dst, ref, dst, op, n);
+                    op += n;
+                    matchLength -= n;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("压缩数据已损坏", e);
+        }
+        if (op != dstEnd) throw new IOException("压缩数据已损坏: 长度不一致");
+
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op, int distance, int matchLength) {
+
+        int tokenIndex = op;
+        op = writeLength(dst, op, literals);
+        System.arraycopy(src, literalStart, dst, op, literals);
+        op += literals;
+        dst[op++] = (byte) distance;
+        dst[op++] = (byte) (distance >>> 8);
+        int extra = matchLength - MIN_MATCH;
+        if (extra >= 15) {
+            dst[tokenIndex] |= 0x0F;
+            op = writeExtra(dst, op, extra - 15);
+        } else {
+            dst[tokenIndex] |= (byte) extra;
+        }
+        return op;
+
+    }
+
+    private static int writeLength(byte[] dst, int op, int literals) { // 写入标记字节(只有字面量长度的部分)和追加的长度
+
+        if (literals >= 15) {
+            dst[op++] = (byte) 0xF0;
+            return writeExtra(dst, op, literals - 15);
+        }
+        dst[op++] = (byte) (literals << 4);
+        return op;
+
+    }
+
+    private static int writeExtra(byte[] dst, int op, int value) {
+
+        while (value >= 255) {
+            dst[op++] = (byte) 255;
+            value -= 255;
+        }
+        dst[op++] = (byte) value;
+        return op;
+
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (int) INT.get(b, i);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+}
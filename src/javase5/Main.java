@@ -1,6 +1,8 @@
 package javase5;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * 缓冲流
@@ -130,6 +132,16 @@ import java.io.*;
  *                  } catch (IOException e) {
  *                      e.printStackTrace();
  *                  }
+ *
+ * 每个缓冲流都会创建自己的缓冲数组 同时打开关闭成千上万个流时会产生大量垃圾 而且mark()能保留的内容受限于缓冲区的大小
+ * PooledBufferedInputStream/PooledBufferedOutputStream从共享的BufferPool中借用缓冲数组 关闭时归还 缓冲区大小会根据读写情况自动调整
+ *
+ * 同样是装饰者模式 CompressedOutputStream在写出之前把数据分块压缩(LZ4格式 见Lz4Block) CompressedInputStream读取时解压
+ * 每一块都是独立压缩的 读取时后面几块可以在其他线程中提前解压 数据量大并且容易压缩(文本 日志 序列化的对象)时 读写磁盘的数据量能少好几倍
+ *                  try (CompressedOutputStream outputStream = new CompressedOutputStream(new FileOutputStream("data.lzb"))) {
+ *                      outputStream.write(data);
+ *                  }
+ * mark()之后的内容保存在环形缓冲区中 即使缓冲区很小(指定的大小会向上取整为池中最小的等级 512字节) 也能reset()回很远的位置 (见test6)
  */
 public class Main {
 
@@ -229,12 +241,118 @@ public class Main {
 
     }
 
+    static void test6() {
+
+        File file = new File("javase5.pooled.bin");
+        byte[] data = new byte[1 << 20];
+        new Random(1).nextBytes(data);
+        try (PooledBufferedOutputStream outputStream = new PooledBufferedOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < data.length; i += 100) outputStream.write(data, i, Math.min(100, data.length - i)); // 小块写入 由缓冲区合并
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new PooledBufferedInputStream(new FileInputStream(file), 1))) { // 实际的缓冲区是512字节 比mark()的范围小得多也能回退
+            byte[] first = new byte[data.length / 2];
+            byte[] second = new byte[data.length / 2];
+            inputStream.mark(data.length);
+            inputStream.readFully(first);
+            inputStream.reset();
+            inputStream.readFully(second);
+            System.out.println("reset后重新读出的" + second.length + "字节是否相同: " + Arrays.equals(first, second));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        for (int round = 0; round < 3; round++) { // 反复打开大量的流 比较两种缓冲流
+            long start = System.nanoTime();
+            for (int i = 0; i < 5000; i++) {
+                try (BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(file), 65536)) {
+                    inputStream.read(data, 0, 4096);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            long middle = System.nanoTime();
+            for (int i = 0; i < 5000; i++) {
+                try (PooledBufferedInputStream inputStream = new PooledBufferedInputStream(new FileInputStream(file), 65536)) {
+                    inputStream.read(data, 0, 4096);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            long end = System.nanoTime();
+            System.out.printf("BufferedInputStream %.1fms PooledBufferedInputStream %.1fms %s%n", (middle - start) / 1e6, (end - middle) / 1e6, BufferPool.shared());
+        }
+        file.delete();
+
+    }
+
+    static void test7() { // 比较未压缩 压缩后单线程解压 并行解压 读写一个较大的文本文件的耗时
+
+        File file = new File("javase5.compressed.bin");
+        byte[] data = logLines(128 << 20);
+        byte[] buffer = new byte[65536];
+        for (int round = 0; round < 3; round++) {
+            try {
+                long start = System.nanoTime();
+                try (BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+                    outputStream.write(data);
+                }
+                long write = System.nanoTime() - start;
+                start = System.nanoTime();
+                try (BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+                    while (inputStream.read(buffer) > 0) ;
+                }
+                print("未压缩", data.length, file.length(), write, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                try (CompressedOutputStream outputStream = new CompressedOutputStream(new FileOutputStream(file))) {
+                    outputStream.write(data);
+                }
+                write = System.nanoTime() - start;
+                for (int prefetch : new int[]{1, Runtime.getRuntime().availableProcessors()}) {
+                    start = System.nanoTime();
+                    try (CompressedInputStream inputStream = new CompressedInputStream(new FileInputStream(file), prefetch)) {
+                        while (inputStream.read(buffer) > 0) ;
+                    }
+                    print("压缩 " + prefetch + "线程解压", data.length, file.length(), write, System.nanoTime() - start);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        file.delete();
+
+    }
+
+    private static byte[] logLines(int size) { // 生成类似日志的文本
+
+        Random random = new Random(1);
+        String[] levels = {"INFO", "WARN", "DEBUG", "ERROR"};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+        while (bytes.size() < size) {
+            String line = String.format("2023-02-28 12:%02d:%02d.%03d [%s] user-%d 请求 /api/books/%d 耗时 %dms%n",
+                    random.nextInt(60), random.nextInt(60), random.nextInt(1000), levels[random.nextInt(4)],
+                    random.nextInt(10000), random.nextInt(100000), random.nextInt(500));
+            bytes.writeBytes(line.getBytes());
+        }
+        return bytes.toByteArray();
+
+    }
+
+    private static void print(String name, long size, long stored, long write, long read) {
+        System.out.printf("%-12s 原始%dMB 文件%dMB 写入%.0fms 读取%.0fms%n", name, size >> 20, stored >> 20, write / 1e6, read / 1e6);
+    }
+
     public static void main(String[] args) {
         //test1();
         //test2();
         //test3();
         //test4();
-        test5();
+        //test5();
+        //test6();
+        test7();
     }
 
 }
@@ -0,0 +1,287 @@
+package javase5;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 使用缓冲区池的缓冲输入流
+ * 缓冲数组从BufferPool中取得 关闭时还回去 大量流打开关闭时几乎不产生新的数组
+ *
+ * 缓冲区大小会根据读取情况自动调整: 连续几次都能把缓冲区读满(比如本地文件) 说明底层流很快 缓冲区加倍 减少系统调用的次数
+ * 连续几次只读到很少的数据(比如网络流) 缓冲区减半 把大数组还给池 调用者一次读取的长度不小于缓冲区时 直接读进调用者的数组 不经过缓冲区
+ *
+ * mark()之后读到的内容会被复制到一个环形缓冲区中 reset()时先从环形缓冲区中重新读出 所以readlimit可以远大于缓冲区本身
+ * BufferedInputStream只能回退到缓冲区里还留着的位置 缓冲区大小为1时mark(1)读两个字节就会失效 这里不会
+ *
+ * 为了减少开销 这个类没有加锁 同一个流不要在多个线程中同时使用
+ */
+public class PooledBufferedInputStream extends FilterInputStream {
+
+    static final int MIN = 512;
+    static final int MAX = 1 << 20;
+
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int position;
+    private int count;
+    private int fullFills; // 连续把缓冲区读满的次数
+    private int shortFills; // 连续只读到不足四分之一的次数
+
+    private final Ring ring;
+    private int replay; // 环形缓冲区中已经重新读出的字节数 这之后的是还没读的
+    private boolean marked;
+    private int markLimit;
+    private final byte[] single = new byte[1];
+
+    public PooledBufferedInputStream(InputStream in) {
+        this(in, 8192, BufferPool.shared());
+    }
+
+    public PooledBufferedInputStream(InputStream in, int size) {
+        this(in, size, BufferPool.shared());
+    }
+
+    public PooledBufferedInputStream(InputStream in, int size, BufferPool pool) {
+
+        super(in);
+        this.pool = pool;
+        this.buffer = pool.acquire(Math.max(size, 1));
+        this.ring = new Ring(pool);
+
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (position < count && !marked && ring.size == 0) return buffer[position++] & 0xff; // 最常见的情况不用走下面的流程
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        ensureOpen();
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+
+        int unread = ring.size - replay;
+        if (unread > 0) { // 先读reset()之后需要重新读出的内容
+            int n = Math.min(len, unread);
+            ring.copy(replay, b, off, n);
+            if (marked) replay += n;
+            else ring.discard(n);
+            return n;
+        }
+
+        int n;
+        if (position < count) {
+            n = Math.min(len, count - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+        } else if (len >= buffer.length) { // 大块读取 直接读进调用者的数组
+            n = in.read(b, off, len);
+            if (n == -1) return -1;
+        } else {
+            if (!fill()) return -1;
+            n = Math.min(len, count);
+            System.arraycopy(buffer, 0, b, off, n);
+            position = n;
+        }
+        record(b, off, n);
+        return n;
+
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        ensureOpen();
+        if (n <= 0) return 0;
+        int unread = ring.size - replay;
+        if (unread > 0) {
+            int skipped = (int) Math.min(n, unread);
+            if (marked) replay += skipped;
+            else ring.discard(skipped);
+            return skipped;
+        }
+        if (position == count) {
+            if (!marked) return in.skip(n); // 跳过的内容不需要保留 交给底层流
+            if (!fill()) return 0;
+        }
+        int skipped = (int) Math.min(n, count - position);
+        record(buffer, position, skipped);
+        position += skipped;
+        return skipped;
+
+    }
+
+    @Override
+    public int available() throws IOException {
+
+        ensureOpen();
+        long available = (long) ring.size - replay + count - position + in.available();
+        return (int) Math.min(available, Integer.MAX_VALUE);
+
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+
+        ring.discard(replay); // mark之前的内容再也不会用到了
+        replay = 0;
+        marked = true;
+        markLimit = readlimit;
+
+    }
+
+    @Override
+    public void reset() throws IOException {
+
+        ensureOpen();
+        if (!marked) throw new IOException("Resetting to invalid mark");
+        replay = 0;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (buffer == null) return;
+        try {
+            in.close();
+        } finally {
+            pool.release(buffer);
+            buffer = null;
+            position = count = 0; // read()的快速路径不检查是否关闭 这样关闭后会走到ensureOpen()
+            ring.release();
+        }
+
+    }
+
+    int bufferSize() {
+        return buffer.length;
+    }
+
+    private void record(byte[] b, int off, int n) { // mark之后读到的内容保存到环形缓冲区中 超过readlimit后mark失效
+
+        if (!marked) return;
+        if (replay + n > markLimit) {
+            marked = false;
+            ring.release(); // 把可能很大的数组还给池
+            replay = 0;
+            return;
+        }
+        ring.append(b, off, n);
+        replay += n;
+
+    }
+
+    private boolean fill() throws IOException { // 缓冲区已经读完了 重新填充 顺便根据上几次的情况调整大小
+
+        if (fullFills >= 4 && buffer.length < MAX) {
+            resize(buffer.length * 2);
+        } else if (shortFills >= 4 && buffer.length > MIN) {
+            resize(buffer.length / 2);
+        }
+
+        position = 0;
+        count = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        count = n;
+        if (n == buffer.length) {
+            fullFills++;
+            shortFills = 0;
+        } else if (n < buffer.length / 4) {
+            shortFills++;
+            fullFills = 0;
+        } else {
+            fullFills = 0;
+            shortFills = 0;
+        }
+        return true;
+
+    }
+
+    private void resize(int size) {
+
+        pool.release(buffer);
+        buffer = pool.acquire(size);
+        fullFills = 0;
+        shortFills = 0;
+
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) throw new IOException("Stream closed");
+    }
+
+    static class Ring { // 环形缓冲区 数组从池中取得 写满时换一个两倍大的
+
+        private final BufferPool pool;
+        private byte[] data;
+        private int head;
+        int size;
+
+        Ring(BufferPool pool) {
+            this.pool = pool;
+        }
+
+        void append(byte[] b, int off, int n) {
+
+            if (data == null || size + n > data.length) grow(size + n);
+            int tail = (head + size) & (data.length - 1);
+            int first = Math.min(n, data.length - tail);
+            System.arraycopy(b, off, data, tail, first);
+            System.arraycopy(b, off + first, data, 0, n - first);
+            size += n;
+
+        }
+
+        void copy(int from, byte[] b, int off, int n) {
+
+            int start = (head + from) & (data.length - 1);
+            int first = Math.min(n, data.length - start);
+            System.arraycopy(data, start, b, off, first);
+            System.arraycopy(data, 0, b, off + first, n - first);
+
+        }
+
+        void discard(int n) {
+
+            size -= n;
+            head = size == 0 ? 0 : (head + n) & (data.length - 1);
+
+        }
+
+        void release() {
+
+            pool.release(data);
+            data = null;
+            head = 0;
+            size = 0;
+
+        }
+
+        private void grow(int capacity) {
+
+            byte[] grown = pool.acquire(Integer.highestOneBit(Math.max(capacity, MIN) - 1) << 1); // 长度必须是2的幂
+            if (data != null) {
+                copy(0, grown, 0, size);
+                pool.release(data);
+            }
+            data = grown;
+            head = 0;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package javase5;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 使用缓冲区池的缓冲输出流
+ * 和PooledBufferedInputStream一样 缓冲数组从BufferPool中取得 关闭时还回去
+ * 连续几次因为缓冲区写满而刷新 说明调用者在大量写入 缓冲区加倍 减少系统调用 调用者一次写入的长度不小于缓冲区时直接写到底层流
+ *
+ * FilterOutputStream的write(byte[], int, int)会逐个字节调用write(int) 这里重写了它 整块复制
+ * 这个类没有加锁 同一个流不要在多个线程中同时使用
+ */
+public class PooledBufferedOutputStream extends FilterOutputStream {
+
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int count;
+    private int fullFlushes; // 连续因为缓冲区满而刷新的次数
+
+    public PooledBufferedOutputStream(OutputStream out) {
+        this(out, 8192, BufferPool.shared());
+    }
+
+    public PooledBufferedOutputStream(OutputStream out, int size) {
+        this(out, size, BufferPool.shared());
+    }
+
+    public PooledBufferedOutputStream(OutputStream out, int size, BufferPool pool) {
+
+        super(out);
+        this.pool = pool;
+        this.buffer = pool.acquire(Math.max(size, 1));
+
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+
+        ensureOpen();
+        if (count == buffer.length) drain(true);
+        buffer[count++] = (byte) b;
+
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        ensureOpen();
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0) throw new IndexOutOfBoundsException();
+        if (len >= buffer.length) { // 大块写入 先把缓冲区里的写出去 再直接写到底层流
+            drain(false);
+            out.write(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) drain(true);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        ensureOpen();
+        drain(false);
+        out.flush();
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (buffer == null) return;
+        try {
+            flush();
+        } finally {
+            try {
+                out.close();
+            } finally {
+                pool.release(buffer);
+                buffer = null;
+            }
+        }
+
+    }
+
+    int bufferSize() {
+        return buffer.length;
+    }
+
+    private void drain(boolean full) throws IOException { // full: 因为缓冲区写满而刷新
+
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        fullFlushes = full ? fullFlushes + 1 : 0;
+        if (fullFlushes >= 4 && buffer.length < PooledBufferedInputStream.MAX) {
+            pool.release(buffer);
+            buffer = pool.acquire(buffer.length * 2);
+            fullFlushes = 0;
+        }
+
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) throw new IOException("Stream closed");
+    }
+
+}
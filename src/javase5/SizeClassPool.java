@@ -0,0 +1,136 @@
+package javase5;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * 按大小等级复用缓冲区 堆上的数组(见BufferPool)和直接缓冲区(见javase4.DirectBufferPool)共用这一份实现 只是分配和取容量的方式不同
+ * 缓冲区按2的幂分成若干个大小等级 每个等级一个全局队列 最多保留retain个 超过最大等级的不进池 用完直接交给GC
+ * local大于0时每个线程还有自己的小缓存 先从里面取 取不到再去全局队列 并发时大多数操作不需要竞争
+ */
+public class SizeClassPool<T> {
+
+    private final int minShift;
+    private final int maxSize;
+    private final int retain;
+    private final int local;
+    private final IntFunction<T> allocator;
+    private final ToIntFunction<T> capacity;
+    private final List<ConcurrentLinkedQueue<T>> classes;
+    private final AtomicInteger[] counts;
+    private final ThreadLocal<Object[][]> caches; // 每个线程每个等级一个很小的数组 空位为null local为0时不使用
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param retain    每个等级在全局队列中最多保留的数量
+     * @param local     每个等级在每个线程的缓存中最多保留的数量
+     * @param allocator 分配一个指定大小的新缓冲区
+     * @param capacity  缓冲区的容量
+     */
+    public SizeClassPool(int minSize, int maxSize, int retain, int local, IntFunction<T> allocator, ToIntFunction<T> capacity) {
+
+        this.minShift = shift(minSize);
+        this.maxSize = 1 << shift(maxSize);
+        this.retain = retain;
+        this.local = local;
+        this.allocator = allocator;
+        this.capacity = capacity;
+        int levels = shift(maxSize) - minShift + 1;
+        classes = new ArrayList<>(levels);
+        counts = new AtomicInteger[levels];
+        for (int i = 0; i < levels; i++) {
+            classes.add(new ConcurrentLinkedQueue<>());
+            counts[i] = new AtomicInteger();
+        }
+        caches = local > 0 ? ThreadLocal.withInitial(() -> new Object[levels][local]) : null;
+
+    }
+
+    /**
+     * 取出一个容量至少为size的缓冲区 (容量会向上取整为2的幂 超过最大等级时正好是size)
+     */
+    public T acquire(int size) {
+
+        if (size > maxSize) {
+            misses.increment();
+            return allocator.apply(size);
+        }
+        int level = level(size);
+        T buffer = caches == null ? null : pop(caches.get()[level]);
+        if (buffer == null) {
+            buffer = classes.get(level).poll();
+            if (buffer != null) counts[level].decrementAndGet();
+        }
+        if (buffer == null) {
+            misses.increment();
+            return allocator.apply(1 << (level + minShift));
+        }
+        hits.increment();
+        return buffer;
+
+    }
+
+    /**
+     * 归还缓冲区 不是这个池的大小等级(不是2的幂 太大或太小)的直接丢弃
+     */
+    public void release(T buffer) {
+
+        int size = capacity.applyAsInt(buffer);
+        if (size > maxSize || Integer.bitCount(size) != 1 || size < 1 << minShift) return;
+        int level = level(size);
+        if (caches != null && push(caches.get()[level], buffer)) return;
+        if (counts[level].incrementAndGet() > retain) {
+            counts[level].decrementAndGet();
+            return; // 池已经满了 交给GC回收
+        }
+        classes.get(level).offer(buffer);
+
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T pop(Object[] stack) {
+
+        for (int i = stack.length - 1; i >= 0; i--) { // 后放进去的先取出 还在CPU缓存中的可能性更大
+            if (stack[i] == null) continue;
+            Object buffer = stack[i];
+            stack[i] = null;
+            return (T) buffer;
+        }
+        return null;
+
+    }
+
+    private boolean push(Object[] stack, T buffer) {
+
+        for (int i = 0; i < local; i++) {
+            if (stack[i] != null) continue;
+            stack[i] = buffer;
+            return true;
+        }
+        return false;
+
+    }
+
+    private int level(int size) {
+        return Math.max(shift(size) - minShift, 0);
+    }
+
+    private static int shift(int size) { // 向上取整后的2的幂次
+        return 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+    }
+
+}
@@ -0,0 +1,247 @@
+package javase6;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志输出
+ * PrintStream的每次println都要加锁 并且直接写入文件 打印日志的线程要等磁盘I/O完成
+ * 这里打印日志的线程只把记录放进一个环形缓冲区就返回 由一个后台线程批量取出 写入文件
+ *
+ * 环形缓冲区是无锁的多生产者单消费者队列: 每个槽位带一个序号 生产者用CAS抢占tail 写入记录后更新槽位序号 消费者根据序号判断记录是否已经写好
+ * 缓冲区满时生产者先自旋 再短暂park 等待后台线程腾出位置 (不会丢弃日志) 后台线程因为异常停止后 println()抛出IllegalStateException 不会一直等下去
+ *
+ * 什么时候把数据真正交给操作系统 由Durability决定: 每N条记录 每T毫秒 或者每批都fsync(最安全 也最慢)
+ * close()会写完所有记录并fsync
+ */
+public class AsyncLogWriter implements Closeable {
+
+    private static final int BATCH = 4096;
+
+    private final Object[] records;
+    private final AtomicLongArray sequences; // 槽位i中记录的状态: 等于序号+1时记录可读 等于序号时槽位空闲
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicInteger producers = new AtomicInteger(); // 正在放入记录的线程数 后台线程等它们都放完才结束
+    private long head; // 只有后台线程访问
+
+    private final FileOutputStream file;
+    private final BufferedOutputStream out;
+    private final Durability durability;
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile boolean flushing; // flush()在等待 不管Durability 立即刷新
+    private volatile long written; // 已经写入文件(按照Durability)的记录数 flush()用它来等待
+    private volatile IOException error;
+
+    private final LongAdder waits = new LongAdder();
+    private long batches;
+    private long flushes;
+
+    public AsyncLogWriter(String name, Durability durability) throws IOException {
+        this(name, durability, 1 << 16);
+    }
+
+    public AsyncLogWriter(String name, Durability durability, int capacity) throws IOException {
+
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.records = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        this.mask = size - 1;
+        this.file = new FileOutputStream(name, true);
+        this.out = new BufferedOutputStream(file, 1 << 16);
+        this.durability = durability;
+        this.writer = new Thread(this::run, "AsyncLogWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+    }
+
+    public void println(String record) {
+
+        producers.incrementAndGet(); // 先登记再检查closed 后台线程看到closed之后一定也能看到这里的登记
+        try {
+            if (closed) throw new IllegalStateException("AsyncLogWriter已关闭");
+            if (error != null) throw new IllegalStateException("写入日志失败", error);
+            int spins = 0;
+            long position = tail.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        records[index] = record;
+                        sequences.lazySet(index, position + 1); // 发布: 之前写入的记录对后台线程可见
+                        return;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) { // 满了 等后台线程取走
+                    if (spins++ == 0) waits.increment();
+                    if (spins < 100) Thread.onSpinWait();
+                    else if (!writer.isAlive()) throw new IllegalStateException("后台线程已停止", error);
+                    else LockSupport.parkNanos(10_000);
+                    position = tail.get();
+                } else {
+                    position = tail.get(); // 被别的线程抢先了
+                }
+            }
+        } finally {
+            producers.decrementAndGet();
+        }
+
+    }
+
+    public void println(Object record) {
+        println(String.valueOf(record));
+    }
+
+    public void printf(String format, Object... args) { // 在调用者线程中格式化
+        println(String.format(format, args));
+    }
+
+    /**
+     * 等待之前放入的所有记录都写入文件
+     */
+    public void flush() throws IOException {
+
+        long target = tail.get();
+        while (written < target) {
+            if (!writer.isAlive()) break;
+            flushing = true;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+        if (error != null) throw error;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) throw error;
+
+    }
+
+    public long waits() { // 生产者因为缓冲区满而等待的次数
+        return waits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncLogWriter{" + durability + " 写入" + Math.min(written, tail.get()) + "条 " + batches + "批 刷新" + flushes + "次 缓冲区满" + waits() + "次}";
+    }
+
+    private void run() { // 后台线程: 取出一批 写入缓冲流 根据Durability刷新
+
+        long pending = 0; // 上次刷新后写入的记录数
+        long lastFlush = System.nanoTime();
+        byte[] newline = {'\n'};
+        try {
+            while (true) {
+                int count = 0;
+                Object record;
+                while (count < BATCH && (record = poll()) != null) { // 一批最多BATCH条 持续有日志时也能按时刷新
+                    out.write(((String) record).getBytes(StandardCharsets.UTF_8));
+                    out.write(newline);
+                    count++;
+                }
+                pending += count;
+                if (count > 0) batches++;
+
+                boolean done = closed && producers.get() == 0 && tail.get() == head; // 关闭前已经通过检查的生产者放完才算结束
+                long now = System.nanoTime();
+                boolean forced = done || flushing && count < BATCH;
+                if (forced) flushing = false;
+                if (pending > 0 && (forced || durability.due(pending, now - lastFlush))) {
+                    out.flush();
+                    if (durability.sync || done) file.getFD().sync();
+                    flushes++;
+                    pending = 0;
+                    lastFlush = now;
+                }
+                if (pending == 0) written = head;
+                if (done) break;
+                if (count == 0) LockSupport.parkNanos(durability.millis > 0 ? Math.min(TimeUnit.MILLISECONDS.toNanos(durability.millis), 1_000_000) : 50_000);
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            written = Long.MAX_VALUE; // 不要让flush()一直等下去
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+        }
+
+    }
+
+    private Object poll() {
+
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) return null;
+        Object record = records[index];
+        records[index] = null;
+        sequences.lazySet(index, head + records.length); // 槽位交还给生产者 下一圈再用
+        head++;
+        return record;
+
+    }
+
+    /**
+     * 持久化策略
+     */
+    public static class Durability {
+
+        final int records;
+        final long millis;
+        final boolean sync;
+
+        private Durability(int records, long millis, boolean sync) {
+            this.records = records;
+            this.millis = millis;
+            this.sync = sync;
+        }
+
+        public static Durability everyRecords(int records) { // 每N条记录写入操作系统一次
+            return new Durability(records, 0, false);
+        }
+
+        public static Durability everyMillis(long millis) { // 最多每T毫秒写入操作系统一次
+            return new Durability(0, millis, false);
+        }
+
+        public static Durability fsync() { // 每一批都写入并强制刷到磁盘上
+            return new Durability(1, 0, true);
+        }
+
+        boolean due(long pending, long elapsed) {
+            return records > 0 ? pending >= records : elapsed >= TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public String toString() {
+            return sync ? "fsync" : records > 0 ? "每" + records + "条" : "每" + millis + "毫秒";
+        }
+
+    }
+
+}
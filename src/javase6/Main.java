@@ -1,6 +1,8 @@
 package javase6;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 /**
  * 转换流
@@ -41,6 +43,12 @@ import java.io.*;
  *                  private OutputStreamWriter charOut;
  *
  * 与此相同的还有一个PrintWriter 不过他们的功能基本一致 PrintWriter的构造方法可以接受一个Writer作为参数 这里就不再做过多阐述了
+ *
+ * PrintStream的println是加锁的 每次都会把内容写到底层的输出流 多个线程同时打印日志时 每个线程都要排队等待磁盘I/O
+ * 日志量很大时可以使用AsyncLogWriter: 打印的线程只把记录放进无锁的环形缓冲区 由后台线程批量写入文件 什么时候刷到磁盘由Durability决定
+ *                  try (AsyncLogWriter log = new AsyncLogWriter("app.log", AsyncLogWriter.Durability.everyMillis(10))) {
+ *                      log.println("yxsnb"); // 不会等待磁盘I/O
+ *                  }
  */
 public class Main {
 
@@ -70,9 +78,65 @@ public class Main {
 
     }
 
+    static void test3() { // 多个线程同时打印日志 比较每次调用的延迟
+
+        int threads = 4, count = 200_000;
+        try {
+            try (PrintStream stream = new PrintStream(new FileOutputStream("javase26.sync.log"))) {
+                report("PrintStream", latencies(threads, count, stream::println));
+            }
+            for (AsyncLogWriter.Durability durability : new AsyncLogWriter.Durability[]{
+                    AsyncLogWriter.Durability.everyRecords(1024),
+                    AsyncLogWriter.Durability.everyMillis(10),
+                    AsyncLogWriter.Durability.fsync()}) {
+                try (AsyncLogWriter log = new AsyncLogWriter("javase26.async.log", durability)) {
+                    report("AsyncLogWriter(" + durability + ")", latencies(threads, count, log::println));
+                    log.flush();
+                    System.out.println(log);
+                }
+                new File("javase26.async.log").delete();
+            }
+            new File("javase26.sync.log").delete();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    private static long[] latencies(int threads, int count, Consumer<String> log) throws InterruptedException {
+
+        long[] result = new long[threads * count];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int offset = t * count;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    String record = "线程" + Thread.currentThread().getName() + " 第" + i + "条日志";
+                    long start = System.nanoTime();
+                    log.accept(record);
+                    result[offset + i] = System.nanoTime() - start;
+                }
+            }, String.valueOf(t));
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+        return result;
+
+    }
+
+    private static void report(String name, long[] latencies) {
+
+        Arrays.sort(latencies);
+        System.out.printf("%-30s p50=%6dns p99=%8dns p99.9=%9dns max=%10dns%n", name,
+                latencies[latencies.length / 2], latencies[(int) (latencies.length * 0.99)],
+                latencies[(int) (latencies.length * 0.999)], latencies[latencies.length - 1]);
+
+    }
+
     public static void main(String[] args) {
         //test1();
-        test2();
+        //test2();
+        test3();
     }
 
 }
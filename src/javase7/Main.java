@@ -1,8 +1,19 @@
 package javase7;
 
+import javase7.codec.CodecRegistry;
+import javase7.codec.RecordReader;
+import javase7.codec.RecordWriter;
 import javase7.people.People;
+import javase7.people.PeopleCodec;
 
 import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * 数据流
@@ -74,6 +85,34 @@ import java.io.*;
  *                  }
  *
  * 其实我们可以看到 在一些JDK内部的源码中 也存在大量的transient关键字 使得某些属性不参与序列化 取消这些不必要保存的属性 可以节省数据空间占用以及减少序列化时间
+ *
+ * 默认的序列化需要写入类描述信息 读写时还要通过反射访问字段 对象多了以后开销很明显
+ * 如果类的结构是确定的 我们也可以自己编写编解码器(见codec.Codec) 直接用数据流写入需要的字段:
+ *                  public class PeopleCodec implements Codec<People> {
+ *
+ *                      public void write(People people, DataOutput out) throws IOException {
+ *                          Codec.writeString(out, people.name); // age是transient的 不写入
+ *                      }
+ *
+ *                      public People read(DataInput in) throws IOException {
+ *                          return new People(Codec.readString(in));
+ *                      }
+ *
+ *                  }
+ *
+ * 需要写入不同类型的对象时 可以把它们注册到CodecRegistry中 写入时会先写一个字节的类型编号
+ *
+ * ObjectOutputStream会在句柄表中记住写过的每个对象 以便再次写入时只写一个引用 所以用同一个流不断写入对象时 写过的对象都无法回收
+ * 导出大量对象时可以使用StreamingObjectWriter: 逐个写入 每隔一定数量调用一次reset()清空句柄表 读取时StreamingObjectReader按需读取下一个对象
+ *                  try (StreamingObjectWriter writer = new StreamingObjectWriter(new BufferedOutputStream(new FileOutputStream("people.bin")))) {
+ *                      for (People people : list) writer.write(people);
+ *                  }
+ *
+ * 大量写入数字时(例如导出一组测量数据) 数据流每个值都要调用一次writeFloat 并且只能使用大端序
+ * 这时可以使用codec.RecordWriter: 数据先放进指定字节序的ByteBuffer 数组可以整体写入 缓冲区满了以后聚集写入到通道中
+ *                  try (RecordWriter writer = new RecordWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE), ByteOrder.nativeOrder())) {
+ *                      writer.writeInt(values.length).writeFloats(values);
+ *                  }
  */
 public class Main {
 
@@ -107,9 +146,184 @@ public class Main {
 
     }
 
+    static void test3() { // 编解码器与默认序列化的结果应当一致
+
+        CodecRegistry registry = new CodecRegistry()
+                .register(1, People.class, new PeopleCodec()); // Book的编解码器见javase8.BookCodec
+        People people = new People("yxs");
+        people.age = "18";
+
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+             ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes);
+             ByteArrayOutputStream codecBytes = new ByteArrayOutputStream();
+             DataOutputStream dataOutputStream = new DataOutputStream(codecBytes)) {
+
+            objectOutputStream.writeObject(people);
+            objectOutputStream.flush();
+            registry.write(people, dataOutputStream);
+
+            ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(codecBytes.toByteArray()));
+            People p1 = (People) objectInputStream.readObject();
+            People p2 = (People) registry.read(dataInputStream);
+            System.out.println(p1.name + " " + p1.age + " / " + p2.name + " " + p2.age);
+            System.out.println("结果一致: " + (p1.name.equals(p2.name) && p1.age == p2.age));
+            System.out.println("序列化 " + bytes.size() + " 字节 编解码器 " + codecBytes.size() + " 字节");
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    static void test4() { // 与test2中的ObjectOutputStream比较吞吐量
+
+        int count = 1_000_000;
+        PeopleCodec codec = new PeopleCodec();
+        for (int round = 0; round < 3; round++) { // 前几轮是JIT预热
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                long start = System.nanoTime();
+                try (ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+                    for (int i = 0; i < count; i++) outputStream.writeObject(new People("yxs" + i));
+                }
+                long write = System.nanoTime() - start;
+                start = System.nanoTime();
+                try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                    for (int i = 0; i < count; i++) inputStream.readObject();
+                }
+                long read = System.nanoTime() - start;
+                print("ObjectOutputStream", count, bytes.size(), write, read);
+
+                bytes = new ByteArrayOutputStream();
+                start = System.nanoTime();
+                try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(bytes))) {
+                    for (int i = 0; i < count; i++) codec.write(new People("yxs" + i), outputStream);
+                }
+                write = System.nanoTime() - start;
+                start = System.nanoTime();
+                try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes.toByteArray())))) {
+                    for (int i = 0; i < count; i++) codec.read(inputStream);
+                }
+                read = System.nanoTime() - start;
+                print("PeopleCodec", count, bytes.size(), write, read);
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+
+    }
+
+    private static void print(String name, int count, int size, long write, long read) {
+        System.out.printf("%-18s %d个对象 %d字节 写入 %.0f 个/秒 读取 %.0f 个/秒%n", name, count, size, count * 1e9 / write, count * 1e9 / read);
+    }
+
+    static void test5() { // 与test1中的数据流比较写入 读取大量float的速度
+
+        int count = 8_000_000;
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) values[i] = i * 0.5F;
+        Path path = Paths.get("floats.bin");
+        for (int round = 0; round < 3; round++) {
+            try {
+                float[] result = new float[count];
+                long start = System.nanoTime();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile())))) {
+                    for (float value : values) out.writeFloat(value);
+                }
+                long write = System.nanoTime() - start;
+                start = System.nanoTime();
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+                    for (int i = 0; i < count; i++) result[i] = in.readFloat();
+                }
+                print("DataOutputStream", count, write, System.nanoTime() - start, Arrays.equals(values, result));
+
+                result = new float[count];
+                start = System.nanoTime();
+                try (RecordWriter out = new RecordWriter(open(path), ByteOrder.nativeOrder())) {
+                    for (float value : values) out.writeFloat(value);
+                }
+                write = System.nanoTime() - start;
+                start = System.nanoTime();
+                try (RecordReader in = new RecordReader(FileChannel.open(path), ByteOrder.nativeOrder())) {
+                    for (int i = 0; i < count; i++) result[i] = in.readFloat();
+                }
+                print("RecordWriter逐个", count, write, System.nanoTime() - start, Arrays.equals(values, result));
+
+                result = new float[count];
+                start = System.nanoTime();
+                try (RecordWriter out = new RecordWriter(open(path), ByteOrder.nativeOrder())) {
+                    out.writeFloats(values);
+                }
+                write = System.nanoTime() - start;
+                start = System.nanoTime();
+                try (RecordReader in = new RecordReader(FileChannel.open(path), ByteOrder.nativeOrder())) {
+                    in.readFloats(result);
+                }
+                print("RecordWriter数组", count, write, System.nanoTime() - start, Arrays.equals(values, result));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private static void print(String name, int count, long write, long read, boolean equal) {
+        System.out.printf("%-18s %d个float 写入 %.1f MB/s 读取 %.1f MB/s 结果一致: %b%n", name, count, count * 4e9 / write / 1048576, count * 4e9 / read / 1048576, equal);
+    }
+
+    static void test6() { // 持续写入大量对象 比较写入过程中的堆内存占用
+
+        int count = 2_000_000;
+        try {
+            long start = System.nanoTime();
+            try (ObjectOutputStream outputStream = new ObjectOutputStream(new BufferedOutputStream(OutputStream.nullOutputStream()))) {
+                for (int i = 0; i < count; i++) outputStream.writeObject(new People("yxs" + i));
+                System.out.printf("ObjectOutputStream    写入%d个对象 耗时%.2f秒 堆内存%dMB%n", count, (System.nanoTime() - start) / 1e9, usedMemory());
+            }
+
+            start = System.nanoTime();
+            try (StreamingObjectWriter writer = new StreamingObjectWriter(new BufferedOutputStream(new FileOutputStream("people.bin")))) {
+                for (int i = 0; i < count; i++) writer.write(new People("yxs" + i));
+                System.out.printf("StreamingObjectWriter 写入%d个对象 耗时%.2f秒 堆内存%dMB%n", count, (System.nanoTime() - start) / 1e9, usedMemory());
+            }
+
+            start = System.nanoTime();
+            int read = 0;
+            try (StreamingObjectReader<People> reader = new StreamingObjectReader<>(new BufferedInputStream(new FileInputStream("people.bin")), People.class)) {
+                for (People people : reader) if (people.name.startsWith("yxs")) read++;
+            }
+            System.out.printf("StreamingObjectReader 读取%d个对象 耗时%.2f秒 堆内存%dMB%n", read, (System.nanoTime() - start) / 1e9, usedMemory());
+            Files.deleteIfExists(Paths.get("people.bin"));
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    private static long usedMemory() {
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+
+    }
+
     public static void main(String[] args) {
         //test1();
-        test2();
+        //test2();
+        //test3();
+        //test4();
+        //test5();
+        test6();
     }
 
 }
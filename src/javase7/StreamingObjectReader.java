@@ -0,0 +1,123 @@
+package javase7;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 流式读取对象 与StreamingObjectWriter配合使用
+ * 遍历时才从流中读取下一个对象 读过的对象不再被引用就可以回收 不需要把所有对象都放进一个集合里
+ *                  try (StreamingObjectReader<People> reader = new StreamingObjectReader<>(new FileInputStream("people.bin"), People.class)) {
+ *                      for (People people : reader) System.out.println(people.name);
+ *                  }
+ *
+ * 也能读取旧格式: 如果开头没有StreamingObjectWriter的标记 而是一个集合(用writeObject直接写入整个集合) 就遍历这个集合中的元素
+ * 遍历结束后可以通过input()继续读取结束标记后面的数据 遍历中遇到的异常包装为UncheckedIOException
+ */
+public class StreamingObjectReader<T> implements Iterable<T>, Closeable {
+
+    private final ObjectInputStream in;
+    private final Class<T> type;
+    private Iterator<?> legacy; // 旧格式中的集合
+    private Object next;
+    private boolean started;
+    private boolean done;
+
+    public StreamingObjectReader(InputStream in, Class<T> type) throws IOException {
+
+        this.in = new ObjectInputStream(in);
+        this.type = type;
+
+    }
+
+    /**
+     * 只能遍历一次
+     */
+    @Override
+    public Iterator<T> iterator() {
+
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+
+                if (next == null && !done) next = advance();
+                return next != null;
+
+            }
+
+            @Override
+            public T next() {
+
+                if (!hasNext()) throw new NoSuchElementException();
+                T value = type.cast(next);
+                next = null;
+                return value;
+
+            }
+        };
+
+    }
+
+    /**
+     * 读取的是旧格式时返回true 要先开始遍历才能确定
+     */
+    public boolean isLegacy() {
+        return legacy != null;
+    }
+
+    /**
+     * 跳过剩下的对象 返回底层的ObjectInputStream 用于读取结束标记后面的数据
+     */
+    public ObjectInputStream input() {
+
+        while (!done) {
+            next = null;
+            advance();
+        }
+        return in;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Object advance() { // 读取下一个对象 没有更多对象时返回null
+
+        try {
+            if (legacy != null) {
+                if (legacy.hasNext()) return legacy.next();
+                done = true;
+                return null;
+            }
+            if (!started) {
+                started = true;
+                Object first = in.readObject();
+                if (first instanceof Collection) {
+                    legacy = ((Collection<?>) first).iterator();
+                    return advance();
+                }
+                if (first != StreamingObjectWriter.Marker.BEGIN) throw new IOException("不是StreamingObjectWriter写入的流");
+            }
+            Object value = in.readObject();
+            if (value == StreamingObjectWriter.Marker.END) {
+                done = true;
+                return null;
+            }
+            if (value == null) throw new IOException("流中不能有null");
+            return value;
+        } catch (ClassNotFoundException e) {
+            throw new UncheckedIOException(new IOException(e));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+    }
+
+}
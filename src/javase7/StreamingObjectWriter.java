@@ -0,0 +1,92 @@
+package javase7;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * 流式写入对象
+ * ObjectOutputStream会记住写过的每一个对象(句柄表) 再次写入同一个对象时只写一个引用 但这也意味着写过的对象永远不会被回收
+ * 一次性写入一个很大的集合 或者长时间不断写入对象时 内存会越占越多
+ *
+ * 这里把集合中的元素一个一个写入 每写入resetInterval个对象调用一次reset()清空句柄表 内存占用就不再随写入的数量增长
+ * 代价是reset之前和之后的对象不再共享引用(同一个对象会被写入两次) 所以元素之间不应该互相引用
+ * 流的开头和结尾各有一个标记 所有元素写完后finish()写入结束标记 之后还可以继续用返回的ObjectOutputStream写入其他数据 读取时使用StreamingObjectReader
+ */
+public class StreamingObjectWriter implements Closeable, Flushable {
+
+    public static final int RESET_INTERVAL = 1024;
+
+    enum Marker { BEGIN, END } // 枚举按名称序列化 不会和普通的对象混淆
+
+    private final ObjectOutputStream out;
+    private final int resetInterval;
+    private int count;
+    private boolean finished;
+
+    public StreamingObjectWriter(OutputStream out) throws IOException {
+        this(out, RESET_INTERVAL);
+    }
+
+    public StreamingObjectWriter(OutputStream out, int resetInterval) throws IOException {
+
+        this.out = new ObjectOutputStream(out);
+        this.resetInterval = resetInterval;
+        this.out.writeObject(Marker.BEGIN); // 读取时据此区分旧格式
+
+    }
+
+    public StreamingObjectWriter write(Object value) throws IOException {
+
+        if (finished) throw new IllegalStateException("已经写入了结束标记");
+        if (value == null) throw new NullPointerException("不能写入null");
+        out.writeObject(value);
+        if (++count % resetInterval == 0) out.reset(); // 读取端遇到reset时也会清空自己的句柄表
+        return this;
+
+    }
+
+    public StreamingObjectWriter writeAll(Iterable<?> values) throws IOException {
+
+        for (Object value : values) write(value);
+        return this;
+
+    }
+
+    /**
+     * 写入结束标记 返回底层的ObjectOutputStream 可以在后面继续写入其他数据
+     */
+    public ObjectOutputStream finish() throws IOException {
+
+        if (!finished) {
+            out.writeObject(Marker.END);
+            out.reset();
+            finished = true;
+        }
+        return out;
+
+    }
+
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+
+    }
+
+}
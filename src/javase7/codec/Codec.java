@@ -0,0 +1,40 @@
+package javase7.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 手写的二进制编解码器
+ * 与Serializable不同 它不写类描述信息 也不经过反射 每个类自己决定写哪些字段 (transient字段直接不写即可)
+ */
+public interface Codec<T> {
+
+    void write(T value, DataOutput out) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    static void writeString(DataOutput out, String str) throws IOException { // 长度-1表示null 不受writeUTF的64KB限制
+
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+
+    }
+
+    static String readString(DataInput in) throws IOException {
+
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package javase7.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 编解码器注册表
+ * 每个类注册一个编号 写入时先写一个字节的编号再写对象 读取时根据编号找到对应的编解码器 代替ObjectOutputStream写入不同类型的对象
+ * 没有注册的子类沿着父类查找 按父类写入 读回来的是父类的对象
+ */
+public class CodecRegistry {
+
+    private final Map<Class<?>, Integer> tags = new HashMap<>();
+    private final Codec<?>[] codecs = new Codec<?>[256];
+
+    public <T> CodecRegistry register(int tag, Class<T> type, Codec<T> codec) {
+
+        if (tag < 0 || tag > 255) throw new IllegalArgumentException("编号必须在0-255之间");
+        if (codecs[tag] != null) throw new IllegalArgumentException("编号" + tag + "已被注册");
+        tags.put(type, tag);
+        codecs[tag] = codec;
+        return this;
+
+    }
+
+    @SuppressWarnings("unchecked")
+    public void write(Object value, DataOutput out) throws IOException {
+
+        Integer tag = null;
+        for (Class<?> type = value.getClass(); tag == null && type != null; type = type.getSuperclass()) tag = tags.get(type); // 子类使用父类的编解码器
+        if (tag == null) throw new IOException("没有注册的类型: " + value.getClass().getName());
+        out.writeByte(tag);
+        ((Codec<Object>) codecs[tag]).write(value, out);
+
+    }
+
+    public Object read(DataInput in) throws IOException {
+
+        int tag = in.readUnsignedByte();
+        if (codecs[tag] == null) throw new IOException("未知的类型编号: " + tag);
+        return codecs[tag].read(in);
+
+    }
+
+}
@@ -0,0 +1,156 @@
+package javase7.codec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 基本类型记录的读取 与RecordWriter配合使用 字节序要和写入时一致
+ * 每次从通道读取一大块到ByteBuffer中 数组通过视图缓冲区整体读出 数据不够时抛出EOFException
+ */
+public class RecordReader implements Closeable {
+
+    private static final int CHUNK = 256 << 10;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    public RecordReader(ReadableByteChannel channel) {
+        this(channel, ByteOrder.BIG_ENDIAN);
+    }
+
+    public RecordReader(ReadableByteChannel channel, ByteOrder order) {
+
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(CHUNK).order(order);
+        this.buffer.flip(); // 一开始没有可读的数据
+
+    }
+
+    public byte readByte() throws IOException {
+        return require(1).get();
+    }
+
+    public short readShort() throws IOException {
+        return require(2).getShort();
+    }
+
+    public int readInt() throws IOException {
+        return require(4).getInt();
+    }
+
+    public long readLong() throws IOException {
+        return require(8).getLong();
+    }
+
+    public float readFloat() throws IOException {
+        return require(4).getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        return require(8).getDouble();
+    }
+
+    public void readBytes(byte[] values) throws IOException {
+        readBytes(values, 0, values.length);
+    }
+
+    public void readBytes(byte[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, require(1).remaining());
+            buffer.get(values, off, n);
+            off += n;
+            len -= n;
+        }
+
+    }
+
+    public void readInts(int[] values) throws IOException {
+        readInts(values, 0, values.length);
+    }
+
+    public void readInts(int[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, require(4).remaining() / 4);
+            buffer.asIntBuffer().get(values, off, n);
+            buffer.position(buffer.position() + n * 4);
+            off += n;
+            len -= n;
+        }
+
+    }
+
+    public void readLongs(long[] values) throws IOException {
+        readLongs(values, 0, values.length);
+    }
+
+    public void readLongs(long[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, require(8).remaining() / 8);
+            buffer.asLongBuffer().get(values, off, n);
+            buffer.position(buffer.position() + n * 8);
+            off += n;
+            len -= n;
+        }
+
+    }
+
+    public void readFloats(float[] values) throws IOException {
+        readFloats(values, 0, values.length);
+    }
+
+    public void readFloats(float[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, require(4).remaining() / 4);
+            buffer.asFloatBuffer().get(values, off, n);
+            buffer.position(buffer.position() + n * 4);
+            off += n;
+            len -= n;
+        }
+
+    }
+
+    public void readDoubles(double[] values) throws IOException {
+        readDoubles(values, 0, values.length);
+    }
+
+    public void readDoubles(double[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, require(8).remaining() / 8);
+            buffer.asDoubleBuffer().get(values, off, n);
+            buffer.position(buffer.position() + n * 8);
+            off += n;
+            len -= n;
+        }
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer require(int n) throws IOException { // 保证缓冲区中至少有n个字节可读
+
+        if (buffer.remaining() >= n) return buffer;
+        buffer.compact();
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+
+    }
+
+}
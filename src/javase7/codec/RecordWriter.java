@@ -0,0 +1,244 @@
+package javase7.codec;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 基本类型记录的写入
+ * DataOutputStream每写一个float都要经过一次方法调用 并且总是大端序 这里先把数据放进ByteBuffer 字节序可以指定(例如使用本机字节序)
+ * 数组可以整体写入(writeFloats等) 由视图缓冲区一次复制过去 不用逐个转换
+ *
+ * 缓冲区分成几段 全部写满后用一次聚集写入(GatheringByteChannel.write)交给通道 减少系统调用的次数
+ * write(ByteBuffer)写入已经准备好的缓冲区时 也和之前缓冲的数据一起聚集写入 不再复制
+ * 读取时使用RecordReader 字节序要和写入时一致
+ */
+public class RecordWriter implements Closeable, Flushable {
+
+    private static final int SEGMENT = 64 << 10;
+    private static final int SEGMENTS = 4;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer[] segments = new ByteBuffer[SEGMENTS];
+    private int current;
+    private ByteBuffer buffer;
+
+    public RecordWriter(WritableByteChannel channel) {
+        this(channel, ByteOrder.BIG_ENDIAN);
+    }
+
+    public RecordWriter(WritableByteChannel channel, ByteOrder order) {
+
+        this.channel = channel;
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = ByteBuffer.allocate(SEGMENT).order(order);
+        this.buffer = segments[0];
+
+    }
+
+    public RecordWriter writeByte(int v) throws IOException {
+
+        ensure(1).put((byte) v);
+        return this;
+
+    }
+
+    public RecordWriter writeShort(int v) throws IOException {
+
+        ensure(2).putShort((short) v);
+        return this;
+
+    }
+
+    public RecordWriter writeInt(int v) throws IOException {
+
+        ensure(4).putInt(v);
+        return this;
+
+    }
+
+    public RecordWriter writeLong(long v) throws IOException {
+
+        ensure(8).putLong(v);
+        return this;
+
+    }
+
+    public RecordWriter writeFloat(float v) throws IOException {
+
+        ensure(4).putFloat(v);
+        return this;
+
+    }
+
+    public RecordWriter writeDouble(double v) throws IOException {
+
+        ensure(8).putDouble(v);
+        return this;
+
+    }
+
+    public RecordWriter writeBytes(byte[] values) throws IOException {
+        return writeBytes(values, 0, values.length);
+    }
+
+    public RecordWriter writeBytes(byte[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, ensure(1).remaining());
+            buffer.put(values, off, n);
+            off += n;
+            len -= n;
+        }
+        return this;
+
+    }
+
+    public RecordWriter writeInts(int[] values) throws IOException {
+        return writeInts(values, 0, values.length);
+    }
+
+    public RecordWriter writeInts(int[] values, int off, int len) throws IOException {
+
+        while (len > 0) { // 每次写满当前一段 视图缓冲区使用相同的字节序
+            int n = Math.min(len, ensure(4).remaining() / 4);
+            buffer.asIntBuffer().put(values, off, n);
+            buffer.position(buffer.position() + n * 4);
+            off += n;
+            len -= n;
+        }
+        return this;
+
+    }
+
+    public RecordWriter writeLongs(long[] values) throws IOException {
+        return writeLongs(values, 0, values.length);
+    }
+
+    public RecordWriter writeLongs(long[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, ensure(8).remaining() / 8);
+            buffer.asLongBuffer().put(values, off, n);
+            buffer.position(buffer.position() + n * 8);
+            off += n;
+            len -= n;
+        }
+        return this;
+
+    }
+
+    public RecordWriter writeFloats(float[] values) throws IOException {
+        return writeFloats(values, 0, values.length);
+    }
+
+    public RecordWriter writeFloats(float[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, ensure(4).remaining() / 4);
+            buffer.asFloatBuffer().put(values, off, n);
+            buffer.position(buffer.position() + n * 4);
+            off += n;
+            len -= n;
+        }
+        return this;
+
+    }
+
+    public RecordWriter writeDoubles(double[] values) throws IOException {
+        return writeDoubles(values, 0, values.length);
+    }
+
+    public RecordWriter writeDoubles(double[] values, int off, int len) throws IOException {
+
+        while (len > 0) {
+            int n = Math.min(len, ensure(8).remaining() / 8);
+            buffer.asDoubleBuffer().put(values, off, n);
+            buffer.position(buffer.position() + n * 8);
+            off += n;
+            len -= n;
+        }
+        return this;
+
+    }
+
+    /**
+     * 写入src中剩余的字节 和已经缓冲的数据一起聚集写入 src本身不会被复制
+     */
+    public RecordWriter write(ByteBuffer src) throws IOException {
+
+        if (src.remaining() <= buffer.remaining()) { // 小块数据直接复制更划算
+            buffer.put(src);
+            return this;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[current + 2];
+        for (int i = 0; i <= current; i++) buffers[i] = segments[i].flip();
+        buffers[current + 1] = src;
+        writeFully(buffers);
+        clear();
+        return this;
+
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        for (int i = 0; i <= current; i++) segments[i].flip();
+        writeFully(segments, current + 1);
+        clear();
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+
+    }
+
+    private ByteBuffer ensure(int n) throws IOException { // 当前一段放不下n个字节时换到下一段 所有段都满了就写入通道
+
+        if (buffer.remaining() >= n) return buffer;
+        if (current + 1 < SEGMENTS) buffer = segments[++current];
+        else flush();
+        return buffer;
+
+    }
+
+    private void clear() {
+
+        for (int i = 0; i <= current; i++) segments[i].clear();
+        current = 0;
+        buffer = segments[0];
+
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        writeFully(buffers, buffers.length);
+    }
+
+    private void writeFully(ByteBuffer[] buffers, int length) throws IOException {
+
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            int first = 0;
+            while (first < length) {
+                gathering.write(buffers, first, length - first);
+                while (first < length && !buffers[first].hasRemaining()) first++;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                while (buffers[i].hasRemaining()) channel.write(buffers[i]);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,21 @@
+package javase7.people;
+
+import javase7.codec.Codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class PeopleCodec implements Codec<People> {
+
+    @Override
+    public void write(People people, DataOutput out) throws IOException {
+        Codec.writeString(out, people.name); // age是transient的 和默认序列化一样不写入
+    }
+
+    @Override
+    public People read(DataInput in) throws IOException {
+        return new People(Codec.readString(in));
+    }
+
+}
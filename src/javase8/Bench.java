@@ -0,0 +1,120 @@
+package javase8;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 图书系统的基准测试 (项目没有构建工具 无法引入JMH 这里用一个简单的手写框架代替)
+ * 每种规模先生成一个快照 然后分别测量: 读取快照 保存快照 录入 按书名线性查找 删除
+ * 每项先预热再测量若干轮 输出每次操作的平均耗时和最快一轮的耗时 之后对持久化或索引的改动都可以和这里的结果对比
+ *
+ * 参数: [最大规模的指数 默认6 即10^3到10^6] 10^7需要几个GB的堆 只有显式传入7时才会测
+ * 数据文件放在临时目录中(通过javase8.data属性) 不会影响src/javase8/data 开始前先读取它的一份拷贝 确认最早格式的快照还能读取
+ */
+public class Bench {
+
+    private static final int OPS = 200; // 录入 删除 查找每轮的操作次数
+    private static long sink; // 防止JIT把查找结果当作无用代码消除
+
+    public static void main(String[] args) throws Exception {
+
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        Path dir = Files.createTempDirectory("javase8-bench");
+        Path data = dir.resolve("data");
+        System.setProperty("javase8.data", data.toString()); // 必须在Main初始化之前设置
+
+        try {
+            Path tracked = Paths.get("src/javase8/data");
+            if (Files.exists(tracked)) { // 读取失败时readDate()抛出异常 基准测试不会继续
+                Files.copy(tracked, data);
+                Main.readDate();
+                System.out.println("读取" + tracked + "的拷贝: " + Main.size() + "本书");
+                Main.closeLog();
+            }
+
+            System.out.printf("%-8s %10s %16s %16s%n", "项目", "规模", "平均(ns/op)", "最快(ns/op)");
+            for (int exponent = 3; exponent <= max; exponent++) {
+                int size = (int) Math.pow(10, exponent);
+                int rounds = exponent >= 6 ? 3 : 10;
+                clean(dir);
+                writeSnapshot(data, size);
+
+                measure("读取快照", size, rounds, 1, () -> {
+                    Main.closeLog();
+                    Main.readDate();
+                });
+                measure("保存快照", size, rounds, 1, Main::saveDate);
+
+                Random random = new Random(exponent);
+                measure("录入", size, rounds, OPS, () -> {
+                    for (int i = 0; i < OPS; i++) Main.insert(book(size + i));
+                });
+                measure("线性查找", size, rounds, OPS / 10, () -> {
+                    for (int i = 0; i < OPS / 10; i++) sink += Main.indexOf("书" + random.nextInt(size));
+                });
+                measure("删除", size, rounds, OPS, () -> {
+                    for (int i = 0; i < OPS; i++) Main.delete(random.nextInt(Main.size()));
+                });
+            }
+        } finally {
+            Main.closeLog();
+            clean(dir);
+            Files.deleteIfExists(dir);
+        }
+        if (sink == 42) System.out.println();
+
+    }
+
+    private interface Round {
+        void run() throws Exception;
+    }
+
+    private static void measure(String name, int size, int rounds, int ops, Round round) throws Exception {
+
+        round.run(); // 预热
+        round.run();
+        long total = 0, best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            round.run();
+            long elapsed = System.nanoTime() - start;
+            total += elapsed;
+            best = Math.min(best, elapsed);
+        }
+        System.out.printf("%-8s %10d %16.0f %16.0f%n", name, size, (double) total / rounds / ops, (double) best / ops);
+
+    }
+
+    private static void writeSnapshot(Path path, int size) throws IOException { // 与Main.writeSerial相同的格式: 列表 + 快照版本
+
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) books.add(book(i));
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+            outputStream.writeObject(books);
+            outputStream.writeLong(0);
+        }
+
+    }
+
+    private static Book book(int i) {
+        return new Book().name("书" + i).author("作者" + i % 1000).price(i % 100 + 0.5);
+    }
+
+    private static void clean(Path dir) throws IOException {
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+
+    }
+
+}
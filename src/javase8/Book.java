@@ -4,23 +4,42 @@ import java.io.Serializable;
 
 public class Book implements Serializable { // 实现序列化接口
 
+    private static final long serialVersionUID = -4858115842645593532L; // 固定为最初版本计算出的值 之后增加方法和transient字段时 已经保存的快照还能读取
+
     String name;
     String author;
     double price;
 
+    transient PagedBookFile owner; // 增量保存: 所属的分页文件和槽位 通过setter修改时通知它这本书需要重新写入
+    transient int slot;
+
     public Book name(String name) {
         this.name = name;
+        changed();
         return this;
     }
     public Book author(String author) {
         this.author = author;
+        changed();
         return this;
     }
     public Book price(double price) {
         this.price = price;
+        changed();
         return this;
     }
 
+    private void changed() {
+        if (owner != null) owner.markDirty(this);
+    }
+
+    Book copy() {
+        return new Book()
+                .name(name)
+                .author(author)
+                .price(price);
+    }
+
     @Override
     public String toString() {
         return "Book{" +
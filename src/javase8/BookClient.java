@@ -0,0 +1,90 @@
+package javase8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 图书服务的压测客户端 (先以 server 参数启动Main)
+ * 参数: [客户端数量 默认200] [每个客户端的请求数 默认500] [写请求百分比 默认10]
+ */
+public class BookClient {
+
+    public static void main(String[] args) throws InterruptedException {
+
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int writePercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+        for (int i = 0; i < clients; i++) {
+            int id = i;
+            new Thread(() -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), 9000);
+                     BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                     BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+                    socket.setTcpNoDelay(true);
+                    start.await();
+                    for (int j = 0; j < requests; j++) {
+                        String request = request(id, j, writePercent);
+                        writer.write(request);
+                        writer.newLine();
+                        writer.flush();
+                        String[] head = reader.readLine().split("\t");
+                        if (!head[0].equals("OK")) errors.increment(); // ERR后面是原因 没有数据行
+                        else if (head.length > 1 && isQuery(request))
+                            for (int k = Integer.parseInt(head[1]); k > 0; k--) reader.readLine();
+                        completed.increment();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "客户端" + i).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%d个客户端 共%d次请求(%d次失败) 耗时%.2f秒 吞吐量 %.0f 次/秒 平均延迟 %.3f 毫秒%n",
+                clients, completed.sum(), errors.sum(), seconds, completed.sum() / seconds, seconds * 1000 * clients / completed.sum());
+
+    }
+
+    private static String request(int client, int n, int writePercent) {
+
+        int kind = Math.floorMod(client * 31 + n * 17, 100);
+        if (kind < writePercent) {
+            if (kind % 2 == 0) return "INSERT\t压测" + client + "-" + n + "\t作者" + client % 50 + "\t" + n % 100;
+            return "MODIFY\t" + client + "\t压测" + client + "-" + n + "\t作者" + client % 50 + "\t" + n % 100;
+        }
+        switch (kind % 4) {
+            case 0: return "AUTHOR\t作者" + ThreadLocalRandom.current().nextInt(50);
+            case 1: return "PRICE\t" + n % 100 + "\t" + (n % 100 + 0.5);
+            case 2: return "SHOW\t" + n + "\t10";
+            default: return "SIZE";
+        }
+
+    }
+
+    private static boolean isQuery(String request) {
+        return !request.startsWith("INSERT") && !request.startsWith("MODIFY") && !request.startsWith("SIZE");
+    }
+
+}
@@ -0,0 +1,70 @@
+package javase8;
+
+import javase7.codec.Codec;
+import javase7.codec.CodecRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Book的编解码器 (见javase7.codec)
+ * ColumnarBookList中的书是Book的子类 注册表会沿着父类找到这个编解码器 读回来的是普通的Book
+ */
+public class BookCodec implements Codec<Book> {
+
+    public static void main(String[] args) { // 与默认序列化比较
+
+        CodecRegistry registry = new CodecRegistry().register(2, Book.class, new BookCodec());
+        List<Book> books = Arrays.asList(
+                new Book().name("Java核心技术").author(null).price(99.9),
+                new ColumnarBookList(Arrays.asList(new Book().name("深入理解Java虚拟机").author("周志明").price(129))).get(0));
+
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+             ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes);
+             ByteArrayOutputStream codecBytes = new ByteArrayOutputStream();
+             DataOutputStream dataOutputStream = new DataOutputStream(codecBytes)) {
+
+            for (Book book : books) {
+                objectOutputStream.writeObject(book.copy());
+                registry.write(book, dataOutputStream);
+            }
+            objectOutputStream.flush();
+
+            DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(codecBytes.toByteArray()));
+            for (Book book : books) {
+                Object read = registry.read(dataInputStream);
+                System.out.println(book.getClass().getSimpleName() + " " + book + " / " + read + " 结果一致: " + book.toString().equals(read.toString()));
+            }
+            System.out.println("序列化 " + bytes.size() + " 字节 编解码器 " + codecBytes.size() + " 字节");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    @Override
+    public void write(Book book, DataOutput out) throws IOException {
+
+        Codec.writeString(out, book.name);
+        Codec.writeString(out, book.author);
+        out.writeDouble(book.price);
+
+    }
+
+    @Override
+    public Book read(DataInput in) throws IOException {
+        return new Book()
+                .name(Codec.readString(in))
+                .author(Codec.readString(in))
+                .price(in.readDouble());
+    }
+
+}
@@ -0,0 +1,106 @@
+package javase8;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 书籍的二级索引
+ * 作者使用哈希索引 书名使用有序索引(前缀查询) 价格使用有序索引(区间查询)
+ * 索引在第一次查询时才建立 之后每次录入 修改 删除都要同步更新: 修改前先remove 改完再add 否则会按旧的键去查找
+ */
+public class BookIndex {
+
+    private final Map<String, List<Book>> byAuthor = new HashMap<>();
+    private final TreeMap<String, List<Book>> byName = new TreeMap<>();
+    private final TreeMap<Double, List<Book>> byPrice = new TreeMap<>();
+    private boolean built;
+
+    public void ensureBuilt(List<Book> books) {
+
+        if (built) return;
+        for (Book book : books) put(book);
+        built = true;
+
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public void clear() { // 书籍对象被整体替换后调用 下次查询时重建
+
+        byAuthor.clear();
+        byName.clear();
+        byPrice.clear();
+        built = false;
+
+    }
+
+    public void add(Book book) {
+        if (built) put(book);
+    }
+
+    public void remove(Book book) {
+
+        if (!built) return;
+        remove(byAuthor, book.author, book);
+        if (book.name != null) remove(byName, book.name, book);
+        remove(byPrice, book.price, book);
+
+    }
+
+    public List<Book> byAuthor(String author) {
+
+        List<Book> books = byAuthor.get(author);
+        return books == null ? new ArrayList<>() : new ArrayList<>(books);
+
+    }
+
+    public List<Book> byNamePrefix(String prefix) {
+
+        List<Book> result = new ArrayList<>();
+        for (Map.Entry<String, List<Book>> entry : byName.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) break; // 有序 遇到第一个不匹配的就可以结束了
+            result.addAll(entry.getValue());
+        }
+        return result;
+
+    }
+
+    public List<Book> byPrice(double min, double max) {
+
+        if (Double.isNaN(min) || Double.isNaN(max)) throw new IllegalArgumentException("价格不能是NaN"); // TreeMap会把NaN排在最后 subMap直接抛出异常
+        if (min > max) throw new IllegalArgumentException("最低价格" + min + "大于最高价格" + max);
+        List<Book> result = new ArrayList<>();
+        for (Collection<Book> books : byPrice.subMap(min, true, max, true).values()) result.addAll(books);
+        return result;
+
+    }
+
+    private void put(Book book) {
+
+        byAuthor.computeIfAbsent(book.author, k -> new ArrayList<>(1)).add(book);
+        if (book.name != null) byName.computeIfAbsent(book.name, k -> new ArrayList<>(1)).add(book);
+        byPrice.computeIfAbsent(book.price, k -> new ArrayList<>(1)).add(book);
+
+    }
+
+    private static <K> void remove(Map<K, List<Book>> index, K key, Book book) {
+
+        List<Book> books = index.get(key);
+        if (books == null) return;
+        for (int i = 0; i < books.size(); i++) {
+            if (books.get(i).equals(book)) { // 普通的Book按对象本身比较 列式存储的视图按槽位比较
+                books.remove(i);
+                break;
+            }
+        }
+        if (books.isEmpty()) index.remove(key);
+
+    }
+
+}
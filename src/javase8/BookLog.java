@@ -0,0 +1,242 @@
+package javase8;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志 (WAL)
+ * 每次录入 修改 删除都以一条紧凑的记录追加到日志末尾 启动时先读取快照 再重放快照之后的日志即可恢复
+ * 文件头: [int 魔数][long 快照版本] 记录: [int 长度][数据][int CRC32] 崩溃时写了一半的记录会在重放时被截掉
+ * 追加记录只锁this 刷盘另外锁channel: 一个线程在刷盘时 其他线程可以继续追加 等它刷完后再把攒下来的记录一次刷掉 (组提交)
+ */
+public class BookLog implements Closeable {
+
+    static final byte INSERT = 1;
+    static final byte MODIFY = 2;
+    static final byte DELETE = 3;
+
+    private static final int MAGIC = 0x424F4F4B; // "BOOK"
+    private static final int HEADER = 12;
+
+    private final FileChannel channel;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(record);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream framed = new DataOutputStream(pending);
+    private final CRC32 crc = new CRC32();
+    private long epoch;
+    private int records;
+
+    private BookLog(FileChannel channel, long epoch, int records) {
+        this.channel = channel;
+        this.epoch = epoch;
+        this.records = records;
+    }
+
+    /**
+     * 打开日志 如果日志属于当前快照版本 则将其中的记录重放到list中 否则说明日志已经合并进快照 直接清空
+     */
+    public static BookLog open(Path path, long epoch, List<Book> list) throws IOException {
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        BookLog log = new BookLog(channel, epoch, 0);
+        if (log.readEpoch() == epoch) log.replay(list);
+        else log.reset(epoch);
+        return log;
+
+    }
+
+    /**
+     * 创建一个属于epoch版本快照的空日志 文件中原有的记录全部丢弃
+     */
+    public static BookLog create(Path path, long epoch) throws IOException {
+
+        BookLog log = new BookLog(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE), epoch, 0);
+        log.reset(epoch);
+        return log;
+
+    }
+
+    public synchronized void insert(Book book) throws IOException {
+
+        begin(INSERT);
+        writeBook(book);
+        end();
+
+    }
+
+    public synchronized void modify(int index, Book book) throws IOException {
+
+        begin(MODIFY);
+        out.writeInt(index);
+        writeBook(book);
+        end();
+
+    }
+
+    public synchronized void delete(int index) throws IOException {
+
+        begin(DELETE);
+        out.writeInt(index);
+        end();
+
+    }
+
+    /**
+     * 将缓冲的记录一次性写入并刷到磁盘 返回后这些修改即使进程崩溃也不会丢失
+     */
+    public void commit() throws IOException {
+
+        synchronized (channel) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                if (pending.size() == 0) return; // 已经被别的线程一起刷掉了
+                buffer = ByteBuffer.wrap(pending.toByteArray());
+                pending.reset();
+            }
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        }
+
+    }
+
+    /**
+     * 快照已经写好 清空日志并切换到新的快照版本
+     */
+    public void reset(long epoch) throws IOException {
+
+        synchronized (channel) {
+            synchronized (this) {
+                pending.reset();
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putLong(epoch).flip();
+                while (header.hasRemaining()) channel.write(header, header.position());
+                channel.position(HEADER);
+                channel.force(false);
+                this.epoch = epoch;
+                this.records = 0;
+            }
+        }
+
+    }
+
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    public synchronized int records() { // 自上次快照以来的记录数
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        commit();
+        channel.close();
+
+    }
+
+    private long readEpoch() throws IOException {
+
+        if (channel.size() < HEADER) return -1;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        channel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC ? header.getLong() : -1;
+
+    }
+
+    private void replay(List<Book> list) throws IOException {
+
+        long valid = HEADER;
+        channel.position(HEADER);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || valid + length + 8 > channel.size()) break;
+                byte[] data = new byte[length];
+                in.readFully(data);
+                crc.reset();
+                crc.update(data);
+                if (in.readInt() != (int) crc.getValue()) break;
+                if (!apply(new DataInputStream(new ByteArrayInputStream(data)), list)) break;
+                valid += length + 8;
+                records++;
+            }
+        } catch (EOFException ignored) {
+        }
+        channel.truncate(valid); // 丢弃尾部残缺的记录
+        channel.position(valid);
+
+    }
+
+    private boolean apply(DataInputStream in, List<Book> list) throws IOException {
+
+        switch (in.readByte()) {
+            case INSERT: list.add(readBook(in, new Book())); return true;
+            case MODIFY: {
+                int index = in.readInt();
+                if (index < 0 || index >= list.size()) return false;
+                readBook(in, list.get(index));
+                return true;
+            }
+            case DELETE: {
+                int index = in.readInt();
+                if (index < 0 || index >= list.size()) return false;
+                list.remove(index);
+                return true;
+            }
+            default: return false;
+        }
+
+    }
+
+    private void begin(byte op) throws IOException {
+
+        record.reset();
+        out.writeByte(op);
+
+    }
+
+    private void end() throws IOException {
+
+        byte[] data = record.toByteArray();
+        crc.reset();
+        crc.update(data);
+        framed.writeInt(data.length);
+        framed.write(data);
+        framed.writeInt((int) crc.getValue());
+        records++;
+
+    }
+
+    private void writeBook(Book book) throws IOException {
+
+        out.writeUTF(book.name);
+        out.writeUTF(book.author);
+        out.writeDouble(book.price);
+
+    }
+
+    private static Book readBook(DataInputStream in, Book book) throws IOException {
+        return book
+                .name(in.readUTF())
+                .author(in.readUTF())
+                .price(in.readDouble());
+    }
+
+}
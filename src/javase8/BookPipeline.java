@@ -0,0 +1,258 @@
+package javase8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 命令流水线 (以 pipeline [文件] 参数启动 不指定文件时从标准输入读取)
+ * 每行一条命令 字段之间用制表符分隔 格式与图书服务的协议相同(见BookServer):
+ * INSERT 书名 作者 价格 | MODIFY 序号 书名 作者 价格 | DELETE 序号 | SIZE | SHOW 起始 数量 | AUTHOR 作者 | PREFIX 前缀 | PRICE 最低 最高
+ *
+ * 命令攒够一批后在一次写锁内全部执行 整批只提交一次日志(见Main.apply) 每批输出执行耗时 可以用来快速重放线上的请求记录
+ * 解析时复用同一个字节缓冲区和同一组Command对象 序号和价格直接从字节中解析 每条命令只为书名 作者创建字符串
+ */
+public class BookPipeline {
+
+    static final int BATCH = 1024;
+
+    static final int ERROR = 0, INSERT = 1, MODIFY = 2, DELETE = 3, SIZE = 4, SHOW = 5, AUTHOR = 6, PREFIX = 7, PRICE = 8;
+    private static final byte[][] NAMES = bytes("", "INSERT", "MODIFY", "DELETE", "SIZE", "SHOW", "AUTHOR", "PREFIX", "PRICE");
+    private static final int[] FIELDS = {0, 4, 5, 2, 1, 3, 2, 2, 3}; // 每种命令的字段数 (含命令本身)
+
+    static class Command {
+
+        int op;
+        long line;
+        int index; // MODIFY DELETE的序号 SHOW的起始位置
+        int count; // SHOW的数量
+        String name; // 书名 或 AUTHOR PREFIX的参数
+        String author;
+        double price; // 价格 或 PRICE的最低价
+        double max;
+        String error; // 执行失败的原因 (见Main.apply)
+
+    }
+
+    public static void run(InputStream in, PrintStream out) throws IOException {
+
+        CommandReader reader = new CommandReader(in);
+        Command[] batch = new Command[BATCH];
+        for (int i = 0; i < BATCH; i++) batch[i] = new Command();
+
+        long batches = 0, total = 0, failed = 0, busy = 0, worst = 0;
+        long begin = System.nanoTime();
+        while (true) {
+            int count = 0;
+            while (count < BATCH && reader.next(batch[count])) count++;
+            if (count == 0) break;
+
+            long start = System.nanoTime();
+            int errors = Main.apply(batch, count);
+            long elapsed = System.nanoTime() - start;
+
+            for (int i = 0; i < count; i++) {
+                if (batch[i].op == ERROR) out.println("第" + batch[i].line + "行: 无法解析的命令");
+                else if (batch[i].error != null) out.println("第" + batch[i].line + "行: ERR " + batch[i].error);
+            }
+            out.printf("第%d批 %d条命令 %d条失败 耗时%.3f毫秒%n", ++batches, count, errors, elapsed / 1e6);
+            total += count;
+            failed += errors;
+            busy += elapsed;
+            worst = Math.max(worst, elapsed);
+        }
+
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        out.printf("共%d批 %d条命令(%d条失败) 耗时%.2f秒 吞吐量 %.0f 条/秒 每批平均 %.3f 毫秒 最慢 %.3f 毫秒%n",
+                batches, total, failed, seconds, total / seconds, batches == 0 ? 0 : busy / 1e6 / batches, worst / 1e6);
+
+    }
+
+    private static byte[][] bytes(String... names) {
+
+        byte[][] result = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) result[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        return result;
+
+    }
+
+    static class CommandReader { // 按行切分的字节缓冲区 一行放不下时扩容 字段的位置记录在starts/ends中
+
+        private final InputStream in;
+        private byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+        private boolean eof;
+        private long line;
+        private final int[] starts = new int[5];
+        private final int[] ends = new int[5];
+
+        CommandReader(InputStream in) {
+            this.in = in;
+        }
+
+        boolean next(Command command) throws IOException {
+
+            while (true) {
+                int end = nextLine();
+                if (end < 0) return false;
+                int start = position;
+                position = end + 1;
+                line++;
+                if (end > start && buffer[end - 1] == '\r') end--;
+                if (end == start) continue; // 跳过空行
+                parse(command, start, end);
+                return true;
+            }
+
+        }
+
+        private int nextLine() throws IOException { // 返回下一个换行符的位置 文件末尾没有换行符时补一个
+
+            int scanned = 0; // 已经找过的字节数 填充缓冲区后不用重新查找
+            while (true) {
+                for (int i = position + scanned; i < limit; i++) if (buffer[i] == '\n') return i;
+                scanned = limit - position;
+                if (eof) {
+                    if (scanned == 0) return -1;
+                    if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length + 1);
+                    buffer[limit] = '\n';
+                    return limit++;
+                }
+                fill();
+            }
+
+        }
+
+        private void fill() throws IOException {
+
+            if (position > 0) { // 把剩下的半行移到开头
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) eof = true;
+            else limit += n;
+
+        }
+
+        private void parse(Command command, int start, int end) {
+
+            command.line = line;
+            command.op = ERROR;
+            command.error = null;
+            int fields = 0;
+            starts[0] = start;
+            for (int i = start; i <= end; i++) {
+                if (i < end && buffer[i] != '\t') continue;
+                if (fields == starts.length) return; // 字段太多
+                ends[fields++] = i;
+                if (i < end && fields < starts.length) starts[fields] = i + 1;
+            }
+
+            int op = ERROR;
+            for (int i = 1; i < NAMES.length && op == ERROR; i++)
+                if (Arrays.equals(buffer, starts[0], ends[0], NAMES[i], 0, NAMES[i].length)) op = i;
+            if (op == ERROR || fields != FIELDS[op]) return;
+
+            try {
+                switch (op) {
+                    case INSERT:
+                        command.name = string(1);
+                        command.author = string(2);
+                        command.price = number(3);
+                        break;
+                    case MODIFY:
+                        command.index = integer(1);
+                        command.name = string(2);
+                        command.author = string(3);
+                        command.price = number(4);
+                        break;
+                    case DELETE:
+                        command.index = integer(1);
+                        break;
+                    case SHOW:
+                        command.index = integer(1);
+                        command.count = integer(2);
+                        break;
+                    case AUTHOR:
+                    case PREFIX:
+                        command.name = string(1);
+                        break;
+                    case PRICE:
+                        command.price = number(1);
+                        command.max = number(2);
+                        break;
+                    default: break;
+                }
+            } catch (NumberFormatException e) {
+                return;
+            }
+            command.op = op;
+
+        }
+
+        private String string(int field) {
+            return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+        }
+
+        private int integer(int field) {
+
+            int value = 0;
+            int from = starts[field], to = ends[field];
+            boolean negative = from < to && buffer[from] == '-';
+            if (negative) from++;
+            if (from == to || to - from > 9) throw new NumberFormatException();
+            for (int i = from; i < to; i++) {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) throw new NumberFormatException();
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+
+        }
+
+        private double number(int field) { // 和导入共用同一个解析 (见BookTransfer.parseDouble) 字段通过view读取 不用先创建字符串
+
+            view.from = starts[field];
+            view.to = ends[field];
+            return BookTransfer.parseDouble(view);
+
+        }
+
+        private final FieldView view = new FieldView();
+
+        private class FieldView implements CharSequence { // 缓冲区中一个ASCII字段的字符视图
+
+            int from;
+            int to;
+
+            @Override
+            public int length() {
+                return to - from;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return (char) (buffer[from + index] & 0xff);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return toString().subSequence(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return new String(buffer, from, to - from, StandardCharsets.US_ASCII);
+            }
+
+        }
+
+    }
+
+}
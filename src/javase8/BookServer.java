@@ -0,0 +1,290 @@
+package javase8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 图书服务 (NIO)
+ * 一个选择器线程负责接收连接和读写数据 读到完整的请求行后交给工作线程池执行
+ * 执行期间暂停读取这个连接 保证同一个客户端的请求按顺序处理 也避免一个客户端塞进来无限多的请求
+ *
+ * 协议: 每行一个请求 字段之间用\t分隔 (UTF-8)
+ *      INSERT name author price        -> OK index
+ *      MODIFY index name author price  -> OK / ERR
+ *      DELETE index                    -> OK / ERR
+ *      SIZE                            -> OK size
+ *      SHOW from count                 -> OK n 后面跟n行 name author price
+ *      AUTHOR author                   -> 同SHOW
+ *      PREFIX prefix                   -> 同SHOW
+ *      PRICE min max                   -> 同SHOW
+ * 参数错误或者执行出错时回复 ERR 原因
+ */
+public class BookServer implements Closeable {
+
+    private static final int MAX_LINE = 1 << 16;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // 工作线程交回给选择器线程执行的操作
+    private final LongAdder requests = new LongAdder();
+    private volatile boolean running = true;
+
+    public BookServer(int port, int threads) throws IOException {
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        workers = Executors.newFixedThreadPool(threads);
+
+    }
+
+    public void run() {
+
+        long lastReport = System.nanoTime();
+        long lastCount = 0;
+        try {
+            while (running) {
+                selector.select(1000);
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else if (key.isReadable()) read(key);
+                        else if (key.isWritable()) write(key);
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - lastReport >= TimeUnit.SECONDS.toNanos(10)) { // 每10秒报告一次吞吐量
+                    long count = requests.sum();
+                    if (count > lastCount) System.out.printf("%.0f 次请求/秒%n", (count - lastCount) * 1e9 / (now - lastReport));
+                    lastReport = now;
+                    lastCount = count;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) close(key);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    @Override
+    public void close() {
+
+        running = false;
+        selector.wakeup();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS); // 等正在执行的请求完成
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    private void accept() throws IOException {
+
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+
+    }
+
+    private void read(SelectionKey key) throws IOException {
+
+        Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.in) == -1) {
+            close(key);
+            return;
+        }
+        dispatch(key);
+
+    }
+
+    private void write(SelectionKey key) throws IOException {
+
+        Connection connection = (Connection) key.attachment();
+        ((SocketChannel) key.channel()).write(connection.out);
+        if (connection.out.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            connection.out = null;
+            key.interestOps(SelectionKey.OP_READ);
+            dispatch(key); // 客户端可能一次发来了多个请求
+        }
+
+    }
+
+    private void dispatch(SelectionKey key) throws IOException {
+
+        Connection connection = (Connection) key.attachment();
+        List<String> lines = connection.takeLines();
+        if (lines.isEmpty()) {
+            if (!connection.in.hasRemaining()) {
+                if (connection.in.capacity() >= MAX_LINE) throw new IOException("请求行过长");
+                connection.in = ByteBuffer.allocate(connection.in.capacity() * 2).put(connection.in.flip());
+            }
+            return;
+        }
+
+        key.interestOps(0);
+        try {
+            workers.execute(() -> {
+                ByteBuffer out = null;
+                try {
+                    StringBuilder response = new StringBuilder();
+                    for (String line : lines) handle(line, response);
+                    out = ByteBuffer.wrap(response.toString().getBytes(StandardCharsets.UTF_8));
+                } finally { // 无论如何都要交还给选择器线程 没有生成回复时关闭连接 不能让它一直挂着
+                    ByteBuffer reply = out;
+                    tasks.add(() -> {
+                        if (!key.isValid()) return;
+                        if (reply == null) {
+                            close(key);
+                            return;
+                        }
+                        connection.out = reply;
+                        try {
+                            write(key);
+                        } catch (IOException e) {
+                            close(key);
+                        }
+                    });
+                    selector.wakeup();
+                }
+            });
+        } catch (RejectedExecutionException e) { // 服务器正在关闭
+            close(key);
+        }
+
+    }
+
+    private void handle(String line, StringBuilder response) {
+
+        requests.increment();
+        String[] fields = line.split("\t", -1);
+        try {
+            switch (fields[0]) {
+                case "INSERT": ok(response).append(Main.insert(new Book()
+                        .name(fields[1])
+                        .author(fields[2])
+                        .price(Double.parseDouble(fields[3])))).append('\n'); break;
+                case "MODIFY": result(response, Main.modify(Integer.parseInt(fields[1]), fields[2], fields[3], Double.parseDouble(fields[4]))); break;
+                case "DELETE": result(response, Main.delete(Integer.parseInt(fields[1])) != null); break;
+                case "SIZE": ok(response).append(Main.size()).append('\n'); break;
+                case "SHOW": books(response, Main.list(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]))); break;
+                case "AUTHOR": books(response, Main.findByAuthor(fields[1])); break;
+                case "PREFIX": books(response, Main.findByName(fields[1])); break;
+                case "PRICE": books(response, Main.findByPrice(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]))); break;
+                default: response.append("ERR\t未知的命令\n");
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            response.append("ERR\t参数错误\n");
+        } catch (Throwable e) { // 其他异常(包括Error)也要回复 否则这个连接不会再被读取 客户端会一直等下去
+            response.append("ERR\t").append(escape(String.valueOf(e.getMessage()))).append('\n');
+        }
+
+    }
+
+    private static StringBuilder ok(StringBuilder response) {
+        return response.append("OK\t");
+    }
+
+    private static void result(StringBuilder response, boolean success) {
+        response.append(success ? "OK\n" : "ERR\t错误的序号\n");
+    }
+
+    private static void books(StringBuilder response, List<Book> books) {
+
+        ok(response).append(books.size()).append('\n');
+        for (Book book : books) {
+            response
+                    .append(escape(book.name)).append('\t')
+                    .append(escape(book.author)).append('\t')
+                    .append(book.price).append('\n');
+        }
+
+    }
+
+    private static String escape(String str) { // 内容里的分隔符会破坏协议 替换成空格
+        return str == null ? "" : str.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    private static void close(SelectionKey key) {
+
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+
+    }
+
+    private static class Connection {
+
+        ByteBuffer in = ByteBuffer.allocate(1024);
+        ByteBuffer out;
+
+        List<String> takeLines() { // 取出缓冲区中所有完整的行 剩下的半行留到下次
+
+            List<String> lines = new ArrayList<>();
+            in.flip();
+            int start = in.position();
+            for (int i = start; i < in.limit(); i++) {
+                if (in.get(i) != '\n') continue;
+                int end = i > start && in.get(i - 1) == '\r' ? i - 1 : i;
+                lines.add(new String(in.array(), start, end - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+            in.position(start);
+            in.compact();
+            return lines;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,366 @@
+package javase8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * 批量导入导出 (CSV 或 JSON Lines 根据扩展名判断)
+ * 导入时边读边解析 每解析出一本书就交给sink 不会把整个文件读进内存
+ * 解析器直接扫描一个64KB的字符缓冲区 字段内容复用同一个StringBuilder 价格也直接从缓冲区中解析 每行只创建书名和作者两个字符串
+ *
+ * CSV: name,author,price 第一行可以是表头 字段中有逗号 引号 换行时用双引号括起来 引号写作"" (CSV无法区分null和空字符串 导入后都是空字符串)
+ * JSON Lines: 每行一个对象 {"name":"...","author":"...","price":12.5}
+ */
+public class BookTransfer {
+
+    private static final int BUFFER = 1 << 16;
+
+    public static long importFile(Path path, Consumer<Book> sink) throws IOException {
+
+        boolean csv = isCsv(path);
+        try (Reader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+            CharSource source = new CharSource(reader);
+            return csv ? readCsv(source, sink) : readJson(source, sink);
+        }
+
+    }
+
+    public static long exportFile(Path path, Iterable<Book> books) throws IOException {
+
+        boolean csv = isCsv(path);
+        long count = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), BUFFER)) {
+            if (csv) writer.write("name,author,price\n");
+            for (Book book : books) {
+                if (csv) writeCsv(writer, book);
+                else writeJson(writer, book);
+                count++;
+            }
+        }
+        return count;
+
+    }
+
+    private static boolean isCsv(Path path) throws IOException {
+
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".csv")) return true;
+        if (name.endsWith(".jsonl") || name.endsWith(".json") || name.endsWith(".ndjson")) return false;
+        throw new IOException("不支持的文件格式: " + name + " (只支持.csv和.jsonl)");
+
+    }
+
+    private static long readCsv(CharSource source, Consumer<Book> sink) throws IOException {
+
+        StringBuilder field = new StringBuilder();
+        long count = 0;
+        boolean first = true;
+        while (source.peek() != -1) {
+            if (source.peek() == '\n' || source.peek() == '\r') { // 空行
+                source.read();
+                continue;
+            }
+
+            String name = null, author = null;
+            double price = 0;
+            int column = 0;
+            int end;
+            do {
+                end = readCsvField(source, field);
+                if (column == 0) name = field.toString();
+                else if (column == 1) author = field.toString();
+                else if (column == 2) price = first && contentEquals(field, "price") ? 0 : parseDouble(field, source);
+                column++;
+            } while (end == ',');
+
+            if (column < 3) throw new IOException("第" + source.line + "行缺少字段");
+            if (!(first && "name".equals(name) && "author".equals(author))) { // 跳过表头
+                sink.accept(new Book().name(name).author(author).price(price));
+                count++;
+            }
+            first = false;
+        }
+        return count;
+
+    }
+
+    private static int readCsvField(CharSource source, StringBuilder field) throws IOException { // 返回字段后面的分隔符: ',' '\n' 或 -1
+
+        field.setLength(0);
+        int c = source.read();
+        if (c == '"') {
+            while (true) {
+                c = source.read();
+                if (c == -1) throw new IOException("第" + source.line + "行的引号没有闭合");
+                if (c == '"') {
+                    if (source.peek() != '"') break;
+                    source.read(); // "" 表示一个引号
+                }
+                field.append((char) c);
+            }
+            c = source.read();
+        }
+        while (c != ',' && c != '\n' && c != -1) {
+            if (c != '\r') field.append((char) c);
+            c = source.read();
+        }
+        return c;
+
+    }
+
+    private static long readJson(CharSource source, Consumer<Book> sink) throws IOException {
+
+        StringBuilder key = new StringBuilder();
+        StringBuilder value = new StringBuilder();
+        long count = 0;
+        while (skipWhitespace(source) != -1) {
+            expect(source, '{');
+            String name = null, author = null;
+            double price = 0;
+            if (skipWhitespace(source) == '}') source.read();
+            else {
+                int c;
+                do {
+                    skipWhitespace(source);
+                    expect(source, '"');
+                    readJsonString(source, key);
+                    skipWhitespace(source);
+                    expect(source, ':');
+                    boolean isString = skipWhitespace(source) == '"';
+                    if (isString) {
+                        source.read();
+                        readJsonString(source, value);
+                    } else {
+                        readJsonLiteral(source, value);
+                    }
+                    boolean isNull = !isString && contentEquals(value, "null");
+                    if (contentEquals(key, "name")) name = isNull ? null : value.toString();
+                    else if (contentEquals(key, "author")) author = isNull ? null : value.toString();
+                    else if (contentEquals(key, "price") && !isNull) price = parseDouble(value, source);
+                    skipWhitespace(source);
+                    c = source.read();
+                } while (c == ',');
+                if (c != '}') throw new IOException("第" + source.line + "行: 缺少 }");
+            }
+            sink.accept(new Book().name(name).author(author).price(price));
+            count++;
+        }
+        return count;
+
+    }
+
+    private static void readJsonString(CharSource source, StringBuilder builder) throws IOException { // 开头的引号已经读过了
+
+        builder.setLength(0);
+        while (true) {
+            int c = source.read();
+            if (c == -1) throw new IOException("第" + source.line + "行的字符串没有闭合");
+            if (c == '"') return;
+            if (c == '\\') {
+                c = source.read();
+                switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'u': {
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(source.read(), 16); // 不是十六进制数字或者到了结尾时为-1
+                            if (digit < 0) throw new IOException("第" + source.line + "行的\\u转义格式错误");
+                            code = code * 16 + digit;
+                        }
+                        c = code;
+                        break;
+                    }
+                    default: break; // \" \\ \/
+                }
+            }
+            builder.append((char) c);
+        }
+
+    }
+
+    private static void readJsonLiteral(CharSource source, StringBuilder builder) throws IOException { // 数字 true false null
+
+        builder.setLength(0);
+        int c;
+        while ((c = source.peek()) != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)) builder.append((char) source.read());
+
+    }
+
+    private static int skipWhitespace(CharSource source) throws IOException {
+
+        int c;
+        while ((c = source.peek()) != -1 && Character.isWhitespace(c)) source.read();
+        return c;
+
+    }
+
+    private static void expect(CharSource source, char expected) throws IOException {
+        if (source.read() != expected) throw new IOException("第" + source.line + "行: 缺少 " + expected);
+    }
+
+    private static boolean contentEquals(StringBuilder builder, String str) {
+        return builder.length() == str.length() && str.contentEquals(builder);
+    }
+
+    private static final double[] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    static double parseDouble(CharSequence str, CharSource source) throws IOException {
+
+        try {
+            return parseDouble(str);
+        } catch (NumberFormatException e) {
+            throw new IOException("第" + source.line + "行的价格格式错误: " + str);
+        }
+
+    }
+
+    static double parseDouble(CharSequence str) { // 格式错误时抛出NumberFormatException
+
+        // 快速路径: 形如 -123.45 且有效数字不超过15位时 整数部分精确 除以10的整数次幂只舍入一次 结果与Double.parseDouble一致
+        int i = 0, length = str.length();
+        boolean negative = length > 0 && str.charAt(0) == '-';
+        if (negative) i++;
+        long digits = 0;
+        int count = 0, scale = -1;
+        boolean any = false; // 至少要有一个数字 "." "-." 交给Double.parseDouble报错
+        for (; i < length; i++) {
+            char c = str.charAt(i);
+            if (c == '.' && scale < 0) scale = 0;
+            else if (c >= '0' && c <= '9' && count < 15) {
+                any = true;
+                digits = digits * 10 + (c - '0');
+                if (digits > 0) count++;
+                if (scale >= 0) scale++;
+            } else break;
+        }
+        if (i == length && any && scale <= 22) {
+            double value = scale > 0 ? digits / POWERS[scale] : digits;
+            return negative ? -value : value;
+        }
+
+        return Double.parseDouble(str.toString().trim());
+
+    }
+
+    private static void writeCsv(Writer writer, Book book) throws IOException {
+
+        writeCsvField(writer, book.name);
+        writer.write(',');
+        writeCsvField(writer, book.author);
+        writer.write(',');
+        writer.write(Double.toString(book.price));
+        writer.write('\n');
+
+    }
+
+    private static void writeCsvField(Writer writer, String str) throws IOException {
+
+        if (str == null) return;
+        boolean quote = false;
+        for (int i = 0; i < str.length() && !quote; i++) {
+            char c = str.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(str);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"') writer.write('"');
+            writer.write(c);
+        }
+        writer.write('"');
+
+    }
+
+    private static void writeJson(Writer writer, Book book) throws IOException {
+
+        writer.write("{\"name\":");
+        writeJsonString(writer, book.name);
+        writer.write(",\"author\":");
+        writeJsonString(writer, book.author);
+        writer.write(",\"price\":");
+        writer.write(Double.toString(book.price));
+        writer.write("}\n");
+
+    }
+
+    private static void writeJsonString(Writer writer, String str) throws IOException {
+
+        if (str == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    if (c < 0x20) writer.write(String.format("\\u%04x", (int) c));
+                    else writer.write(c);
+            }
+        }
+        writer.write('"');
+
+    }
+
+    static class CharSource { // 带行号的字符缓冲区 比BufferedReader少一层同步和按行复制
+
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER];
+        private int position;
+        private int limit;
+        long line = 1;
+
+        CharSource(Reader reader) {
+            this.reader = reader;
+        }
+
+        int peek() throws IOException {
+
+            if (position == limit && !fill()) return -1;
+            return buffer[position];
+
+        }
+
+        int read() throws IOException {
+
+            if (position == limit && !fill()) return -1;
+            char c = buffer[position++];
+            if (c == '\n') line++;
+            return c;
+
+        }
+
+        private boolean fill() throws IOException {
+
+            int n = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            limit = Math.max(n, 0);
+            return n > 0;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,235 @@
+package javase8;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * 列式存储的书籍列表
+ * 价格保存在double[]中 书名和作者保存为字典编号(见StringDictionary) 每本书只占用几个数组元素 而不是三个对象
+ * get()返回的是一个视图: 字段在创建时从列中读取 通过name() author() price()修改时会同时写回列中
+ *
+ * 数组按槽位(slot)存放 删除书籍只把槽位标记为空 不移动数据 所以视图在其他书籍被删除后依然有效
+ * 列表的顺序由order数组记录 统计时直接顺序扫描整个列 被删除的槽位价格为0 作者编号为-1 不会影响结果
+ * 空出来的槽位放进free中 之后录入的书籍优先使用 槽位每次被删除时版本号加一 已删除书籍的视图再修改也不会写到新的书籍上
+ * 字典只增不减 删除和修改多了以后 字典中会有很多不再使用的字符串 变动次数超过书籍数量时用还在使用的字符串重建字典
+ */
+public class ColumnarBookList extends AbstractList<Book> implements RandomAccess {
+
+    private static final int DEAD = -2; // 被删除的槽位的书名编号 (-1表示书名为null)
+
+    private StringDictionary nameDictionary = new StringDictionary();
+    private StringDictionary authorDictionary = new StringDictionary();
+    private double[] prices;
+    private int[] names;
+    private int[] authors;
+    private int[] versions;
+    private int slots;
+    private int[] free = new int[16];
+    private int freeCount;
+    private int churn; // 上次重建字典以来的删除和修改次数
+    private int[] order;
+    private int size;
+
+    public ColumnarBookList(List<Book> books) {
+
+        int capacity = Math.max(16, books.size());
+        prices = new double[capacity];
+        names = new int[capacity];
+        authors = new int[capacity];
+        versions = new int[capacity];
+        order = new int[capacity];
+        for (Book book : books) add(book);
+
+    }
+
+    @Override
+    public Book get(int index) {
+        return new Row(order[checkIndex(index, size)]);
+    }
+
+    @Override
+    public Book set(int index, Book book) {
+
+        Book old = get(index);
+        write(order[index], book);
+        return old;
+
+    }
+
+    @Override
+    public void add(int index, Book book) {
+
+        checkIndex(index, size + 1);
+        if (freeCount == 0 && slots == prices.length) {
+            int capacity = prices.length + (prices.length >> 1);
+            prices = Arrays.copyOf(prices, capacity);
+            names = Arrays.copyOf(names, capacity);
+            authors = Arrays.copyOf(authors, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+        }
+        if (size == order.length) order = Arrays.copyOf(order, order.length + (order.length >> 1));
+
+        int slot = freeCount > 0 ? free[--freeCount] : slots++;
+        write(slot, book);
+        System.arraycopy(order, index, order, index + 1, size - index);
+        order[index] = slot;
+        size++;
+        modCount++;
+
+    }
+
+    @Override
+    public Book remove(int index) {
+
+        Book old = get(index); // 视图里已经读出了字段 之后槽位被清空也不影响它
+        int slot = order[index];
+        prices[slot] = 0;
+        names[slot] = DEAD;
+        authors[slot] = -1;
+        versions[slot]++; // 之前创建的视图不再写回这个槽位
+        if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+        free[freeCount++] = slot;
+        System.arraycopy(order, index + 1, order, index, size - index - 1);
+        size--;
+        modCount++;
+        changed();
+        return old;
+
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public double sumPrice() {
+
+        double sum = 0;
+        double[] prices = this.prices;
+        for (int i = 0; i < slots; i++) sum += prices[i]; // 顺序扫描一个double数组 JIT可以展开和向量化
+        return sum;
+
+    }
+
+    public double avgPrice() {
+        return size == 0 ? 0 : sumPrice() / size;
+    }
+
+    public Map<String, Integer> countByAuthor() {
+
+        int[] counts = new int[authorDictionary.size()];
+        int[] authors = this.authors;
+        for (int i = 0; i < slots; i++) if (authors[i] >= 0) counts[authors[i]]++;
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int id = 0; id < counts.length; id++) if (counts[id] > 0) result.put(authorDictionary.decode(id), counts[id]);
+        return result;
+
+    }
+
+    public long bytes() { // 列和字典占用的内存 (不含对象头)
+        return prices.length * 20L + order.length * 4L + free.length * 4L + nameDictionary.bytes() + authorDictionary.bytes();
+    }
+
+    private void changed() {
+        if (++churn > Math.max(size, 1024)) compactDictionaries();
+    }
+
+    private void compactDictionaries() { // 只保留还在使用的字符串 编号重新分配 视图中只有字段值 不受影响
+
+        StringDictionary nameDictionary = new StringDictionary();
+        StringDictionary authorDictionary = new StringDictionary();
+        for (int slot = 0; slot < slots; slot++) {
+            if (names[slot] == DEAD) continue;
+            names[slot] = nameDictionary.encode(this.nameDictionary.decode(names[slot]));
+            authors[slot] = authorDictionary.encode(this.authorDictionary.decode(authors[slot]));
+        }
+        this.nameDictionary = nameDictionary;
+        this.authorDictionary = authorDictionary;
+        churn = 0;
+
+    }
+
+    private void write(int slot, Book book) {
+
+        prices[slot] = book.price;
+        names[slot] = nameDictionary.encode(book.name);
+        authors[slot] = authorDictionary.encode(book.author);
+
+    }
+
+    private static int checkIndex(int index, int size) {
+
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return index;
+
+    }
+
+    private class Row extends Book {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int slot;
+        private final int version;
+
+        Row(int slot) {
+            this.slot = slot;
+            this.version = versions[slot];
+            this.name = nameDictionary.decode(names[slot]);
+            this.author = authorDictionary.decode(authors[slot]);
+            this.price = prices[slot];
+        }
+
+        @Override
+        public Book name(String name) {
+            if (live()) {
+                names[slot] = nameDictionary.encode(name);
+                changed();
+            }
+            return super.name(name);
+        }
+
+        @Override
+        public Book author(String author) {
+            if (live()) {
+                authors[slot] = authorDictionary.encode(author);
+                changed();
+            }
+            return super.author(author);
+        }
+
+        @Override
+        public Book price(double price) {
+            if (live()) prices[slot] = price;
+            return super.price(price);
+        }
+
+        @Override
+        public boolean equals(Object o) { // 同一个槽位同一个版本的视图视为同一本书
+            return o instanceof Row && ((Row) o).slot == slot && ((Row) o).version == version && ((Row) o).owner() == owner();
+        }
+
+        private boolean live() { // 书籍被删除后 视图只修改自己的字段
+            return versions[slot] == version;
+        }
+
+        @Override
+        public int hashCode() {
+            return slot;
+        }
+
+        private ColumnarBookList owner() {
+            return ColumnarBookList.this;
+        }
+
+        private Object writeReplace() { // 序列化时写成普通的Book
+            return copy();
+        }
+
+    }
+
+}
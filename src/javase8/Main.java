@@ -1,28 +1,115 @@
 package javase8;
 
+import javase5.CompressedInputStream;
+import javase5.CompressedOutputStream;
+import javase7.StreamingObjectReader;
+import javase7.StreamingObjectWriter;
+
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 /**
  * I/O编程实战 (图书管理系统)
  * 要求实现一个图书馆系统(控制台) 支持以下功能: 保存书籍信息(要求持久化) 查询 添加 删除 修改书籍信息
+ *
+ * 持久化采用 快照 + 预写日志 的方式: 每次修改都立即追加一条日志记录(见BookLog) 退出或日志过长时才把整个列表合并写成快照
+ * 这样每次修改的写入开销与书籍总数无关 程序中途崩溃也不会丢失已经完成的修改
+ * 快照中的书籍是逐本写入的(见javase7.StreamingObjectWriter) 书籍再多 保存时也不会让所有书籍都留在ObjectOutputStream的句柄表中 旧版本写入整个列表的快照仍然可以读取
+ *
+ * 以 mapped 参数启动时 快照改为保存在data.bin中(见MappedBookFile) 启动时只映射文件 书籍在被访问时才会读取
+ * 第一次以mapped启动且data.bin不存在时 会从原来的data快照中读取 退出时再写成data.bin
+ * 每种快照有自己的日志(快照文件名加上.log) 版本号只在同一种快照中递增 切换模式时不会把一种快照的日志重放到另一种快照上
+ *
+ * 按作者 书名前缀 价格区间查询时走二级索引(见BookIndex) 不再需要遍历整个列表
+ *
+ * 以 columnar 参数启动时 读取快照后改用列式存储(见ColumnarBookList) 书籍不再是一个个独立的对象 内存占用更少 统计也更快
+ * 可以与mapped一起使用 此时直接从映射文件解码到列中
+ *
+ * 批量导入导出支持CSV和JSON Lines(见BookTransfer) 导入时独占写锁 导入的书籍不逐条写日志 而是在最后合并为一次快照
+ *
+ * 以 paged 参数启动时 快照改为分页文件data.pages(见PagedBookFile) 保存时只写入修改过的书籍 保存耗时与修改的数量成正比
+ * paged不能和mapped columnar一起使用 (这两种模式下的书籍是从文件或列中临时创建的视图 无法跟踪修改)
+ *
+ * 以 compressed 参数启动时 快照压缩后再保存(见javase5.CompressedOutputStream) 书籍较多时读写的数据量更小 解压在多个线程中并行进行
+ * 读取时根据文件开头的魔数判断是否压缩 所以随时可以去掉这个参数 压缩和未压缩的快照都能读取 (只对默认的快照格式有效)
+ *
+ * 以 pipeline [文件] 参数启动时不显示菜单 而是从文件或标准输入批量读取命令执行(见BookPipeline) 用于重放请求记录
+ * 每批命令在一次写锁内执行 整批只提交一次日志 (见apply)
+ *
+ * 以 server 参数启动时不进入控制台 而是在本机端口上提供图书服务(见BookServer) 多个客户端可以同时查询和修改
+ * 所有的增删改查都经过下面的insert modify delete等方法 它们使用读写锁保护LIST: 查询之间可以并发 修改时独占
  */
 public class Main {
 
+    private static final String DATA = System.getProperty("javase8.data", "src/javase8/data"); // 基准测试时改到临时目录
+    private static final int COMPACT_THRESHOLD = 1000; // 日志记录数达到阈值时合并为快照
+    private static final int PORT = 9000;
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+
     private static List<Book> LIST = new ArrayList<>();
+    private static final BookIndex INDEX = new BookIndex();
+    private static BookLog LOG;
+    private static long EPOCH; // 快照版本 日志只在版本一致时重放
+    private static boolean MAPPED;
+    private static boolean COLUMNAR;
+    private static boolean PAGED;
+    private static boolean COMPRESSED;
+    private static PagedBookFile PAGES;
+    private static Path SOURCE; // LIST是从哪个快照读取的 日志跟着快照走
 
     public static void main(String[] args) {
 
-        readDate();
+        MAPPED = Arrays.asList(args).contains("mapped");
+        COLUMNAR = Arrays.asList(args).contains("columnar");
+        PAGED = Arrays.asList(args).contains("paged");
+        COMPRESSED = Arrays.asList(args).contains("compressed");
+        if (PAGED && (MAPPED || COLUMNAR)) {
+            System.out.println("paged不能与mapped或columnar一起使用");
+            return;
+        }
+        try {
+            readDate();
+        } catch (IOException e) { // 带着空列表继续运行的话 下次保存会用空列表覆盖原来的快照
+            e.printStackTrace();
+            System.out.println("读取数据失败 为了不覆盖原来的数据 程序退出");
+            return;
+        }
+        if (Arrays.asList(args).contains("server")) {
+            serve();
+            return;
+        }
+        int pipeline = Arrays.asList(args).indexOf("pipeline");
+        if (pipeline >= 0) {
+            pipeline(pipeline + 1 < args.length && !isMode(args[pipeline + 1]) ? args[pipeline + 1] : null);
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in); // 整个会话共用一个Scanner 每次循环都创建会丢掉它已经缓冲的输入
         while (true) {
-            Scanner scanner = new Scanner(System.in);
             System.out.println("=============== 图书管理系统 ===============");
             System.out.println("1. 录入书籍信息");
             System.out.println("2. 修改书籍信息");
             System.out.println("3. 查询书籍列表");
             System.out.println("4. 删除书籍");
+            System.out.println("5. 按作者查询");
+            System.out.println("6. 按书名前缀查询");
+            System.out.println("7. 按价格区间查询");
+            System.out.println("8. 统计");
+            System.out.println("9. 批量导入 (.csv/.jsonl)");
+            System.out.println("10. 批量导出 (.csv/.jsonl)");
             System.out.println("(按0键退出管理系统)");
 
             String str = scanner.nextLine();
@@ -31,73 +118,600 @@ public class Main {
                 case "2": modifyBook(scanner); break;
                 case "3": showBook(); break;
                 case "4": deleteBook(scanner); break;
-                case "0": saveDate(); scanner.close(); return;
+                case "5": findByAuthor(scanner); break;
+                case "6": findByName(scanner); break;
+                case "7": findByPrice(scanner); break;
+                case "8": showStats(); break;
+                case "9": importBooks(scanner); break;
+                case "10": exportBooks(scanner); break;
+                case "0": saveDate(); closeLog(); scanner.close(); return;
             }
         }
 
     }
 
-    @SuppressWarnings("unchecked")
-    private static void readDate() { // IO流持久化
+    private static boolean isMode(String arg) {
+        return Arrays.asList("mapped", "columnar", "paged", "compressed", "server", "pipeline").contains(arg);
+    }
+
+    private static void pipeline(String file) {
+
+        try (InputStream in = file == null ? System.in : new FileInputStream(file)) {
+            BookPipeline.run(in, System.out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally { // 中途出错时 已经执行的命令也要合并进快照
+            saveDate();
+            closeLog();
+        }
+
+    }
+
+    static void readDate() throws IOException { // IO流持久化 读取失败时抛出异常 LIST保持不变
 
-        File file = new File("src/javase8/data");
+        INDEX.clear(); // 重新读取后书籍对象都换了 索引需要重建
+        if (PAGED) readPaged();
+        else if (MAPPED && Files.exists(snapshot())) readMapped();
+        else readSerial();
+        if (COLUMNAR && !(LIST instanceof ColumnarBookList)) LIST = new ColumnarBookList(LIST);
+
+        try {
+            LOG = BookLog.open(log(SOURCE), EPOCH, LIST); // 重放这个快照之后的修改
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+    private static void readSerial() throws IOException {
+
+        File file = new File(DATA);
+        SOURCE = file.toPath();
         if (file.exists()) {
-            try (ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("src/javase8/data"))) {
-                LIST = (List<Book>) inputStream.readObject();
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
+            try (StreamingObjectReader<Book> reader = new StreamingObjectReader<>(CompressedInputStream.detect(new FileInputStream(DATA)), Book.class)) {
+                List<Book> books = new ArrayList<>();
+                for (Book book : reader) books.add(book); // 旧格式的快照(整个列表) 也能读取 (Book的serialVersionUID固定不变)
+                LIST = books;
+                EPOCH = readEpoch(reader.input());
+            } catch (UncheckedIOException e) { // 遍历时的异常
+                throw e.getCause();
             }
         }else {
             LIST = new ArrayList<>();
+            EPOCH = 0;
+        }
+
+    }
+    private static long readEpoch(ObjectInputStream inputStream) throws IOException {
+
+        try {
+            return inputStream.readLong();
+        } catch (EOFException e) {
+            return 0; // 旧版本的快照文件没有版本号
+        }
+
+    }
+    private static void readMapped() throws IOException { // 失败时LIST保持不变
+
+        MappedBookFile file = MappedBookFile.open(snapshot());
+        SOURCE = snapshot();
+        LIST = COLUMNAR ? new ColumnarBookList(file.asList()) : new MappedBookList(file);
+        EPOCH = file.epoch();
+        INDEX.clear(); // 书籍对象全部换成了新的 索引需要重建
+
+    }
+
+    private static void readPaged() throws IOException {
+
+        PAGES = PagedBookFile.open(snapshot());
+        SOURCE = snapshot();
+        if (PAGES.isEmpty() && new File(DATA).exists()) { // 第一次使用分页文件 从原来的快照中迁移
+            readSerial();
+            List<Book> books = LIST;
+            LIST = PAGES.load();
+            LIST.addAll(books);
+        } else {
+            LIST = PAGES.load();
+            EPOCH = PAGES.epoch();
+        }
+
+    }
+
+    static void saveDate() { // 合并快照: 先写临时文件再原子替换 最后清空日志
+
+        LOCK.writeLock().lock();
+        try {
+            Path tmp = Paths.get(DATA + ".tmp");
+            try {
+                if (PAGED) {
+                    PAGES.save(LIST, EPOCH + 1); // 分页文件自己保证原子性 只写入修改过的槽位
+                } else {
+                    if (MAPPED) MappedBookFile.write(tmp, LIST, EPOCH + 1);
+                    else writeSerial(tmp);
+                    Files.move(tmp, snapshot(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            EPOCH++;
+            Path source = SOURCE;
+            SOURCE = snapshot();
+            if (MAPPED) {
+                try {
+                    readMapped(); // 重新映射新文件 之前读取到堆上的书籍也就可以回收了
+                } catch (IOException e) { // 继续使用原来的列表 (旧的映射仍然有效 内容与刚写入的快照相同) 不能换成空列表 否则下次合并会写入空的快照
+                    e.printStackTrace();
+                }
+            }
+            try {
+                if (LOG != null && source.equals(SOURCE)) {
+                    LOG.reset(EPOCH);
+                } else if (LOG != null) { // 从另一种快照迁移过来: 那个快照和它的日志保持原样 新快照从一个空日志开始
+                    LOG.close();
+                    LOG = BookLog.create(log(SOURCE), EPOCH);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+
+    }
+    private static void writeSerial(Path path) throws IOException {
+
+        try (FileOutputStream fileOutputStream = new FileOutputStream(path.toFile());
+             OutputStream out = COMPRESSED ? new CompressedOutputStream(fileOutputStream) : new BufferedOutputStream(fileOutputStream);
+             StreamingObjectWriter writer = new StreamingObjectWriter(out)) {
+            writer.writeAll(LIST); // 逐本写入并定期reset 不会让整个列表都留在句柄表中 其他List实现也不用先复制成ArrayList
+            writer.finish().writeLong(EPOCH + 1);
+            writer.flush();
+            if (out instanceof CompressedOutputStream) ((CompressedOutputStream) out).finish(); // 结束标记也要在sync之前写入
+            fileOutputStream.getFD().sync();
         }
 
     }
-    private static void saveDate() {
 
-        try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream("src/javase8/data"))) {
-            outputStream.writeObject(LIST);
-            outputStream.flush();
+    private static Path snapshot() {
+        return Paths.get(PAGED ? DATA + ".pages" : MAPPED ? DATA + ".bin" : DATA);
+    }
+
+    private static Path log(Path snapshot) {
+        return Paths.get(snapshot + ".log");
+    }
+
+    private static void commit() { // 在锁外提交日志 同时提交的多个线程会共用一次刷盘 记录过多时顺便合并一次快照
+
+        if (LOG == null) return;
+        try {
+            LOG.commit();
+            if (LOG.records() >= COMPACT_THRESHOLD) compact();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    private static void compact() { // 多个线程可能同时发现超过了阈值 拿到写锁后再检查一次 第一个合并之后日志已经清空 后面的直接返回
+
+        LOCK.writeLock().lock();
+        try {
+            if (LOG != null && LOG.records() >= COMPACT_THRESHOLD) saveDate();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+
+    }
+
+    private static void log(LogAction action) { // 在写锁内调用 保证日志顺序与修改顺序一致
+
+        if (LOG == null) return;
+        try {
+            action.run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    private interface LogAction {
+        void run() throws IOException;
+    }
+
+    static void closeLog() {
+
+        try {
+            if (LOG != null) LOG.close();
+            if (PAGES != null) PAGES.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
     }
 
+    private static void serve() {
+
+        try {
+            BookServer server = new BookServer(PORT, Runtime.getRuntime().availableProcessors());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> { // Ctrl+C 退出时保存
+                server.close();
+                saveDate();
+                closeLog();
+            }));
+            System.out.println("图书服务已启动 端口: " + PORT);
+            server.run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    static int insert(Book book) {
+
+        int index;
+        LOCK.writeLock().lock();
+        try {
+            index = doInsert(book);
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        commit();
+        return index;
+
+    }
+
+    static boolean modify(int index, String name, String author, double price) {
+
+        boolean success;
+        LOCK.writeLock().lock();
+        try {
+            success = doModify(index, name, author, price);
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        commit();
+        return success;
+
+    }
+
+    static Book delete(int index) {
+
+        Book book;
+        LOCK.writeLock().lock();
+        try {
+            book = doDelete(index);
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        commit();
+        return book;
+
+    }
+
+    static int apply(BookPipeline.Command[] commands, int count) { // 在一次写锁内执行一批命令 整批只提交一次日志 返回失败的命令数
+
+        int failed = 0;
+        LOCK.writeLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                BookPipeline.Command command = commands[i];
+                boolean success = true;
+                try {
+                    switch (command.op) {
+                        case BookPipeline.INSERT: doInsert(new Book().name(command.name).author(command.author).price(command.price)); break;
+                        case BookPipeline.MODIFY: success = doModify(command.index, command.name, command.author, command.price); break;
+                        case BookPipeline.DELETE: success = doDelete(command.index) != null; break;
+                        case BookPipeline.SIZE: break;
+                        case BookPipeline.SHOW: for (int j = Math.max(command.index, 0); j < Math.min(command.index + command.count, LIST.size()); j++) LIST.get(j); break;
+                        case BookPipeline.AUTHOR: INDEX.ensureBuilt(LIST); INDEX.byAuthor(command.name); break;
+                        case BookPipeline.PREFIX: INDEX.ensureBuilt(LIST); INDEX.byNamePrefix(command.name); break;
+                        case BookPipeline.PRICE: INDEX.ensureBuilt(LIST); INDEX.byPrice(command.price, command.max); break;
+                        default: success = false;
+                    }
+                } catch (RuntimeException e) { // 和图书服务一样 一条命令出错只影响它自己 这一批中之前写的日志照常提交
+                    command.error = String.valueOf(e.getMessage());
+                    success = false;
+                }
+                if (!success) failed++;
+            }
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        commit();
+        return failed;
+
+    }
+
+    private static int doInsert(Book book) { // 以下三个方法需要持有写锁
+
+        if (PAGED) PAGES.check(book); // 放不进分页文件的书籍不能写进日志 否则之后每次合并快照都会失败
+        LIST.add(book);
+        int index = LIST.size() - 1;
+        INDEX.add(LIST.get(index)); // 列式存储中保存的是视图 不是传进来的对象
+        log(() -> LOG.insert(book));
+        return index;
+
+    }
+
+    private static boolean doModify(int index, String name, String author, double price) {
+
+        if (index < 0 || index >= LIST.size()) return false;
+        if (PAGED) PAGES.check(new Book().name(name).author(author).price(price));
+        Book book = LIST.get(index);
+        INDEX.remove(book);
+        book
+                .name(name)
+                .author(author)
+                .price(price);
+        INDEX.add(book);
+        log(() -> LOG.modify(index, book));
+        return true;
+
+    }
+
+    private static Book doDelete(int index) {
+
+        if (index < 0 || index >= LIST.size()) return null;
+        Book book = LIST.remove(index);
+        INDEX.remove(book);
+        log(() -> LOG.delete(index));
+        return book;
+
+    }
+
+    static int size() {
+
+        LOCK.readLock().lock();
+        try {
+            return LIST.size();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+    }
+
+    static List<Book> list(int from, int count) { // 返回的是副本 锁外使用也不会读到别的线程改了一半的书籍
+
+        LOCK.readLock().lock();
+        try {
+            List<Book> books = new ArrayList<>();
+            for (int i = Math.max(from, 0); i < LIST.size() && books.size() < count; i++) books.add(LIST.get(i).copy());
+            return books;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+    }
+
+    static int indexOf(String name) { // 按书名精确查找 不走索引 逐个比较
+
+        LOCK.readLock().lock();
+        try {
+            for (int i = 0; i < LIST.size(); i++) if (Objects.equals(LIST.get(i).name, name)) return i;
+            return -1;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+    }
+
+    static List<Book> findByAuthor(String author) {
+        return query(() -> copies(INDEX.byAuthor(author)));
+    }
+
+    static List<Book> findByName(String prefix) {
+        return query(() -> copies(INDEX.byNamePrefix(prefix)));
+    }
+
+    static List<Book> findByPrice(double min, double max) {
+        return query(() -> copies(INDEX.byPrice(min, max)));
+    }
+
+    static long importBooks(Path path) throws IOException {
+
+        LOCK.writeLock().lock();
+        try {
+            int before = LIST.size();
+            try {
+                return BookTransfer.importFile(path, book -> {
+                    if (PAGED) PAGES.check(book);
+                    LIST.add(book);
+                    INDEX.add(LIST.get(LIST.size() - 1));
+                });
+            } catch (IOException | RuntimeException e) {
+                while (LIST.size() > before) INDEX.remove(LIST.remove(LIST.size() - 1)); // 导入失败时撤销已经加入的书籍
+                throw e;
+            } finally {
+                if (LIST.size() > before) saveDate(); // 逐条写日志会频繁触发合并 不如导入完成后直接写一次快照
+            }
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+
+    }
+
+    static long exportBooks(Path path) throws IOException {
+
+        LOCK.readLock().lock();
+        try {
+            List<Book> books = LIST;
+            if (books instanceof MappedBookList) { // 映射模式下逐本读取 不把书籍缓存到堆上
+                MappedBookList mapped = (MappedBookList) books;
+                books = new AbstractList<Book>() {
+                    @Override
+                    public Book get(int index) {
+                        return mapped.read(index);
+                    }
+
+                    @Override
+                    public int size() {
+                        return mapped.size();
+                    }
+                };
+            }
+            return BookTransfer.exportFile(path, books);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+    }
+
+    static Map<String, Integer> countByAuthor() {
+
+        LOCK.readLock().lock();
+        try {
+            if (LIST instanceof ColumnarBookList) return ((ColumnarBookList) LIST).countByAuthor();
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (Book book : LIST) counts.merge(book.author, 1, Integer::sum);
+            return counts;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+    }
+
+    static double sumPrice() {
+
+        LOCK.readLock().lock();
+        try {
+            if (LIST instanceof ColumnarBookList) return ((ColumnarBookList) LIST).sumPrice();
+            double sum = 0;
+            for (Book book : LIST) sum += book.price;
+            return sum;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+    }
+
+    private static <T> T query(Supplier<T> query) { // 在读锁内查询索引 索引还没建立时先用写锁建立 再降级为读锁
+
+        LOCK.readLock().lock();
+        try {
+            if (INDEX.isBuilt()) return query.get();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+        LOCK.writeLock().lock();
+        try {
+            INDEX.ensureBuilt(LIST);
+            LOCK.readLock().lock();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        try {
+            return query.get();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+    }
+
+    private static List<Book> copies(List<Book> books) {
+
+        List<Book> result = new ArrayList<>(books.size());
+        for (Book book : books) result.add(book.copy());
+        return result;
+
+    }
+
     private static void insertBook(Scanner scanner) { // 增加
 
-        LIST.add(new Book()
-                .name(scanner.nextLine())
-                .author(scanner.nextLine())
-                .price(scanner.nextDouble()));
+        try {
+            insert(new Book()
+                    .name(scanner.nextLine())
+                    .author(scanner.nextLine())
+                    .price(scanner.nextDouble()));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
 
     }
 
     private static void modifyBook(Scanner scanner) { // 修改
 
         int i = 0;
-        for (Book book : LIST) System.out.println(++i + "." + book);
+        for (Book book : list(0, Integer.MAX_VALUE)) System.out.println(++i + "." + book);
         int index = scanner.nextInt();
         scanner.nextLine();
-        if (index >= LIST.size()) System.out.println("错误的序号");
-        else LIST
-                    .get(index)
-                    .name(scanner.nextLine())
-                    .author(scanner.nextLine())
-                    .price(scanner.nextDouble());
+        try {
+            if (index >= size()) System.out.println("错误的序号");
+            else if (!modify(index, scanner.nextLine(), scanner.nextLine(), scanner.nextDouble())) System.out.println("错误的序号");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
 
     }
 
     private static void showBook() { // 查询
-        LIST.forEach(System.out::println);
+        list(0, Integer.MAX_VALUE).forEach(System.out::println);
+    }
+
+    private static void findByAuthor(Scanner scanner) { // 按作者查询 (哈希索引)
+        findByAuthor(scanner.nextLine()).forEach(System.out::println);
+    }
+
+    private static void findByName(Scanner scanner) { // 按书名前缀查询 (有序索引)
+        findByName(scanner.nextLine()).forEach(System.out::println);
+    }
+
+    private static void findByPrice(Scanner scanner) { // 按价格区间查询 (有序索引)
+
+        double min = scanner.nextDouble();
+        double max = scanner.nextDouble();
+        try {
+            findByPrice(min, max).forEach(System.out::println);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+
+    }
+
+    private static void showStats() { // 统计
+
+        int size = size();
+        double sum = sumPrice();
+        System.out.println("书籍总数: " + size + " 总价: " + sum + " 平均价格: " + (size == 0 ? 0 : sum / size));
+        countByAuthor().forEach((author, count) -> System.out.println(author + ": " + count + "本"));
+
+    }
+
+    private static void importBooks(Scanner scanner) { // 批量导入
+
+        Path path = Paths.get(scanner.nextLine());
+        long start = System.nanoTime();
+        try {
+            long count = importBooks(path);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("导入%d本书 耗时%.2f秒 %.0f 行/秒%n", count, seconds, count / seconds);
+        } catch (IOException | IllegalArgumentException e) { // 有书籍放不进分页文件时 整个导入都会撤销
+            e.printStackTrace();
+        }
+
+    }
+
+    private static void exportBooks(Scanner scanner) { // 批量导出
+
+        Path path = Paths.get(scanner.nextLine());
+        long start = System.nanoTime();
+        try {
+            long count = exportBooks(path);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("导出%d本书 耗时%.2f秒 %.0f 行/秒%n", count, seconds, count / seconds);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
     }
 
     private static void deleteBook(Scanner scanner) { // 删除
 
         int i = 0;
-        for (Book book : LIST) System.out.println(++i + "." + book);
+        for (Book book : list(0, Integer.MAX_VALUE)) System.out.println(++i + "." + book);
         int index = scanner.nextInt();
-        if (index > LIST.size()) System.out.println("错误的序号");
-        else LIST.remove(index);
+        if (delete(index) == null) System.out.println("错误的序号");
 
     }
 
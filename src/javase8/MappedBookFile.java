@@ -0,0 +1,178 @@
+package javase8;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 内存映射的书籍文件 (定长文件头 + 偏移表)
+ * 打开时只映射文件 不反序列化任何对象 按序号读取name author price时才去解码对应的字节
+ * 文件头: [int 魔数][long 快照版本][int 书籍数量][int 偏移表位置] 记录: [double price][int 长度][name][int 长度][author]
+ * 偏移表: 每本书一个int 指向它的记录 (单个文件最大2GB)
+ *
+ * 保存时先写临时文件 再用Files.move替换仍然处于映射状态的旧文件 旧的映射继续指向原来的内容 直到重新映射成功
+ * 这依赖POSIX的语义(替换的只是目录项) Windows不允许替换已经映射的文件 这种模式只能在Linux/macOS上使用
+ */
+public class MappedBookFile implements Closeable {
+
+    private static final int MAGIC = 0x424B4D46; // "BKMF"
+    private static final int HEADER = 20;
+
+    private final MappedByteBuffer buffer;
+    private final long epoch;
+    private final int count;
+    private final int table;
+
+    private MappedBookFile(MappedByteBuffer buffer) throws IOException {
+
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) throw new IOException("不是书籍映射文件");
+        this.epoch = buffer.getLong(4);
+        this.count = buffer.getInt(12);
+        this.table = buffer.getInt(16);
+
+    }
+
+    public static MappedBookFile open(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("映射文件不能超过2GB");
+            return new MappedBookFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())); // 关闭通道后映射依然有效
+        }
+
+    }
+
+    public static void write(Path path, List<Book> books, long epoch) throws IOException {
+
+        int[] offsets = new int[books.size()];
+        try (FileOutputStream fileOutputStream = new FileOutputStream(path.toFile());
+             DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 1 << 16))) {
+
+            outputStream.writeInt(MAGIC);
+            outputStream.writeLong(epoch);
+            outputStream.writeInt(books.size());
+            outputStream.writeInt(0); // 偏移表位置 写完记录后回填
+            MappedBookList mapped = books instanceof MappedBookList ? (MappedBookList) books : null; // 用read()读取 不要把整个目录缓存到堆上
+            int i = 0;
+            for (Book book : mapped != null ? mapped.reading() : books) {
+                offsets[i++] = checkedSize(outputStream);
+                outputStream.writeDouble(book.price);
+                writeString(outputStream, book.name);
+                writeString(outputStream, book.author);
+            }
+            int table = checkedSize(outputStream);
+            for (int offset : offsets) outputStream.writeInt(offset);
+            outputStream.flush();
+            fileOutputStream.getChannel().write(ByteBuffer.allocate(4).putInt(0, table), 16);
+            fileOutputStream.getFD().sync();
+        }
+
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public double price(int index) {
+        return buffer.getDouble(offset(index));
+    }
+
+    public String name(int index) {
+        return readString(offset(index) + 8);
+    }
+
+    public String author(int index) {
+
+        int position = offset(index) + 8;
+        int length = buffer.getInt(position);
+        return readString(position + 4 + Math.max(length, 0));
+
+    }
+
+    public Book get(int index) {
+
+        int position = offset(index);
+        int length = buffer.getInt(position + 8);
+        return new Book()
+                .price(buffer.getDouble(position))
+                .name(readString(position + 8))
+                .author(readString(position + 12 + Math.max(length, 0)));
+
+    }
+
+    public List<Book> asList() { // 只读视图 每次get都重新解码 不做缓存
+
+        class View extends AbstractList<Book> implements RandomAccess {
+
+            @Override
+            public Book get(int index) {
+                return MappedBookFile.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+        }
+        return new View();
+
+    }
+
+    @Override
+    public void close() {
+        // 映射缓冲区由GC回收 这里没有需要释放的资源
+    }
+
+    private int offset(int index) {
+
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        return buffer.getInt(table + index * 4);
+
+    }
+
+    private String readString(int position) {
+
+        int length = buffer.getInt(position);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(position + 4, bytes); // 绝对位置读取 多线程读取也不会互相影响
+        return new String(bytes, StandardCharsets.UTF_8);
+
+    }
+
+    private static void writeString(DataOutputStream outputStream, String str) throws IOException {
+
+        if (str == null) {
+            outputStream.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+
+    }
+
+    private static int checkedSize(DataOutputStream outputStream) throws IOException { // size()超过int范围后会停在MAX_VALUE
+
+        if (outputStream.size() == Integer.MAX_VALUE) throw new IOException("映射文件不能超过2GB");
+        return outputStream.size();
+
+    }
+
+}
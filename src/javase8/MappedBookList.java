@@ -0,0 +1,131 @@
+package javase8;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于MappedBookFile的书籍列表
+ * 只有被访问过的书籍才会创建Book对象 (并缓存下来 保证通过流式setter做的修改不会丢失) 新录入的书籍保存在堆上
+ * 删除书籍之前不需要任何按书籍数量分配的内存 删除之后才会建立一个int行号数组
+ */
+public class MappedBookList extends AbstractList<Book> implements RandomAccess {
+
+    private final MappedBookFile file;
+    private final Map<Integer, Book> loaded = new ConcurrentHashMap<>(); // 多个线程持有读锁时也会同时读取
+    private final List<Book> added = new ArrayList<>();
+    private int[] rows; // 每个位置对应的行号 负数-(k+1)表示added中的第k本 为null时表示文件中的书籍按原顺序排在最前面
+    private int size;
+
+    public MappedBookList(MappedBookFile file) {
+        this.file = file;
+        this.size = file.size();
+    }
+
+    @Override
+    public Book get(int index) {
+
+        int row = row(index);
+        return row < 0 ? added.get(-row - 1) : loaded.computeIfAbsent(row, file::get);
+
+    }
+
+    public Book read(int index) { // 读取但不缓存 用于导出等只读的遍历 返回的对象修改后不会保留
+
+        int row = row(index);
+        if (row < 0) return added.get(-row - 1);
+        Book book = loaded.get(row);
+        return book != null ? book : file.get(row);
+
+    }
+
+    public List<Book> reading() { // 用read()实现的只读视图 遍历整个列表时不会缓存任何书籍
+
+        return new AbstractList<Book>() {
+
+            @Override
+            public Book get(int index) {
+                return read(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+        };
+
+    }
+
+    @Override
+    public Book set(int index, Book book) {
+
+        int row = row(index);
+        if (row < 0) return added.set(-row - 1, book);
+        Book old = get(index);
+        loaded.put(row, book);
+        return old;
+
+    }
+
+    @Override
+    public void add(int index, Book book) {
+
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        added.add(book);
+        int row = -added.size();
+        if (rows == null && index == size) {
+            size++;
+        } else {
+            ensureRows();
+            if (size == rows.length) rows = Arrays.copyOf(rows, Math.max(16, size + (size >> 1)));
+            System.arraycopy(rows, index, rows, index + 1, size - index);
+            rows[index] = row;
+            size++;
+        }
+        modCount++;
+
+    }
+
+    @Override
+    public Book remove(int index) {
+
+        Book old = get(index);
+        ensureRows();
+        int row = rows[index];
+        System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+        size--;
+        if (row < 0) added.set(-row - 1, null);
+        else loaded.remove(row);
+        modCount++;
+        return old;
+
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int row(int index) {
+
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        if (rows != null) return rows[index];
+        return index < file.size() ? index : file.size() - index - 1;
+
+    }
+
+    private void ensureRows() {
+
+        if (rows != null) return;
+        int[] array = new int[size];
+        for (int i = 0; i < size; i++) array[i] = row(i);
+        rows = array;
+
+    }
+
+}
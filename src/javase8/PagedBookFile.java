@@ -0,0 +1,379 @@
+package javase8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * 分页的书籍文件 (增量保存)
+ * 文件由4KB的页组成 第一页是文件头 之后每页分成8个512字节的槽位 每本书占一个槽位 槽位顺序就是列表顺序
+ * Book的setter会把自己标记为脏 保存时只重写脏的槽位和被删除的槽位 耗时只和修改的数量有关 与书籍总数无关
+ *
+ * 原地覆盖写到一半时崩溃会损坏文件 所以保存时先把要写的槽位写进.journal文件并刷盘 再覆盖到原文件 完成后删除journal
+ * 打开文件时如果发现完整的journal 说明上次覆盖没有完成 重新覆盖一遍即可 (槽位内容是完整的镜像 重复覆盖没有影响)
+ *
+ * 被删除的槽位只标记为空 空槽位多于有效槽位时 下次保存会重写整个文件
+ * 编码后超过一个槽位的书籍无法保存 录入和修改时先用check()拒绝 (见Main.doInsert)
+ * 文件头: [int 魔数][long 快照版本][int 槽位数] 槽位: [byte 是否有效][BookCodec编码的书籍]
+ */
+public class PagedBookFile implements Closeable {
+
+    static final int PAGE = 4096;
+    static final int SLOT = 512;
+    private static final int MAGIC = 0x424B5047; // "BKPG"
+
+    private final Path path;
+    private final Path journal;
+    private final BookCodec codec = new BookCodec();
+    private final Set<Book> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final BitSet freed = new BitSet();
+    private FileChannel channel;
+    private long epoch;
+    private int slots;
+    private int stored; // 文件头中记录的槽位数 之后分配的槽位还没有写入文件
+    private int empty; // 文件中已经是空的槽位数
+    private boolean reordered;
+
+    private PagedBookFile(Path path) {
+        this.path = path;
+        this.journal = Paths.get(path + ".journal");
+    }
+
+    public static PagedBookFile open(Path path) throws IOException {
+
+        PagedBookFile file = new PagedBookFile(path);
+        file.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        file.recover();
+        if (file.channel.size() < PAGE) file.writeHeader(0, 0);
+        ByteBuffer header = ByteBuffer.allocate(16);
+        file.channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) throw new IOException("不是书籍分页文件: " + path);
+        file.epoch = header.getLong();
+        file.slots = header.getInt();
+        file.stored = file.slots;
+        return file;
+
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public boolean isEmpty() { // 新建的文件
+        return epoch == 0 && slots == 0;
+    }
+
+    /**
+     * 读取所有书籍 返回的列表会跟踪增删: 新加入的书籍分配新的槽位 删除的书籍释放槽位
+     */
+    public List<Book> load() throws IOException {
+
+        List<Book> books = new ArrayList<>();
+        empty = 0;
+        ByteBuffer page = ByteBuffer.allocate(PAGE);
+        for (int slot = 0; slot < slots; slot++) {
+            if (slot % (PAGE / SLOT) == 0) {
+                page.clear();
+                channel.read(page, offset(slot));
+                page.flip();
+            }
+            int start = slot % (PAGE / SLOT) * SLOT;
+            if (page.limit() <= start || page.get(start) == 0) {
+                empty++;
+                continue;
+            }
+            Book book = codec.read(new DataInputStream(new ByteArrayInputStream(page.array(), start + 1, SLOT - 1)));
+            book.owner = this;
+            book.slot = slot;
+            books.add(book);
+        }
+        return new Tracked(books);
+
+    }
+
+    synchronized void markDirty(Book book) {
+        dirty.add(book);
+    }
+
+    /**
+     * 只写入脏的槽位 如果空槽位太多或者书籍被插入到了中间 则重写整个文件
+     */
+    public synchronized void save(List<Book> books, long epoch) throws IOException {
+
+        if (reordered || empty + freed.cardinality() > books.size()) {
+            rewrite(books, epoch);
+            return;
+        }
+
+        Map<Integer, byte[]> images = new TreeMap<>(); // 按槽位排序 写入时尽量顺序
+        for (Book book : dirty) images.put(book.slot, encode(book));
+        for (int slot = freed.nextSetBit(0); slot >= 0; slot = freed.nextSetBit(slot + 1)) images.put(slot, new byte[SLOT]);
+
+        writeJournal(images, epoch);
+        apply(images, epoch, slots);
+        Files.delete(journal);
+        stored = slots;
+        empty += freed.cardinality();
+        dirty.clear();
+        freed.clear();
+        this.epoch = epoch;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void track(Book book) {
+
+        if (book.owner == this) return;
+        book.owner = this;
+        book.slot = slots++;
+        dirty.add(book);
+
+    }
+
+    private void release(Book book) {
+
+        if (book.owner != this) return;
+        dirty.remove(book);
+        if (book.slot == slots - 1 && book.slot >= stored) slots--; // 最后分配的槽位还没有写入文件 直接收回 (例如导入失败后撤销)
+        else freed.set(book.slot);
+        book.owner = null;
+
+    }
+
+    private void rewrite(List<Book> books, long epoch) throws IOException {
+
+        Path tmp = Paths.get(path + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, header(epoch, books.size()), 0);
+            ByteBuffer page = ByteBuffer.allocate(PAGE);
+            int slot = 0;
+            for (Book book : books) {
+                page.position(slot % (PAGE / SLOT) * SLOT);
+                page.put(encode(book));
+                if (++slot % (PAGE / SLOT) == 0) {
+                    page.flip();
+                    writeFully(out, page, offset(slot - PAGE / SLOT));
+                    page.clear();
+                }
+            }
+            if (slot % (PAGE / SLOT) != 0) {
+                Arrays.fill(page.array(), page.position(), PAGE, (byte) 0); // 最后一页剩下的槽位清空
+                page.position(PAGE).flip();
+                writeFully(out, page, offset(slot - slot % (PAGE / SLOT)));
+            }
+            out.force(true);
+        }
+
+        // 替换成功并且打开了新文件才关闭原来的通道 中途失败时原文件和通道都保持不变 状态也没有修改 下次保存会再重写一次
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel old = channel;
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        old.close();
+        int slot = 0;
+        for (Book book : books) {
+            book.owner = this;
+            book.slot = slot++;
+        }
+        this.slots = slot;
+        this.stored = slot;
+        this.epoch = epoch;
+        empty = 0;
+        reordered = false;
+        dirty.clear();
+        freed.clear();
+
+    }
+
+    /**
+     * 检查书籍能否放进一个槽位 放不下时抛出IllegalArgumentException 要在写日志之前调用 否则之后每次保存都会失败
+     */
+    public void check(Book book) {
+
+        try {
+            encode(book);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+
+    }
+
+    private byte[] encode(Book book) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(SLOT);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        codec.write(book, out);
+        if (bytes.size() > SLOT) throw new IOException("书名和作者太长 超过了分页文件槽位的大小: " + book);
+        byte[] image = new byte[SLOT];
+        System.arraycopy(bytes.toByteArray(), 0, image, 0, bytes.size());
+        return image;
+
+    }
+
+    private void writeJournal(Map<Integer, byte[]> images, long epoch) throws IOException {
+
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(epoch);
+        out.writeInt(slots);
+        out.writeInt(images.size());
+        for (Map.Entry<Integer, byte[]> entry : images.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.write(entry.getValue());
+        }
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+
+        try (FileChannel file = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(file, ByteBuffer.wrap(bytes.toByteArray()), 0);
+            file.force(true);
+        }
+
+    }
+
+    private void recover() throws IOException {
+
+        if (!Files.exists(journal)) return;
+        byte[] bytes = Files.readAllBytes(journal);
+        if (bytes.length >= 28) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 8);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() == crc.getValue() && in.readInt() == MAGIC) {
+                long epoch = in.readLong();
+                int slots = in.readInt();
+                Map<Integer, byte[]> images = new TreeMap<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    int slot = in.readInt();
+                    byte[] image = new byte[SLOT];
+                    in.readFully(image);
+                    images.put(slot, image);
+                }
+                apply(images, epoch, slots);
+            }
+        }
+        Files.delete(journal); // 不完整的journal说明还没开始覆盖 原文件是完好的
+
+    }
+
+    private void apply(Map<Integer, byte[]> images, long epoch, int slots) throws IOException {
+
+        for (Map.Entry<Integer, byte[]> entry : images.entrySet()) writeFully(channel, ByteBuffer.wrap(entry.getValue()), offset(entry.getKey()));
+        writeHeader(epoch, slots);
+
+    }
+
+    private void writeHeader(long epoch, int slots) throws IOException {
+
+        writeFully(channel, header(epoch, slots), 0);
+        channel.force(true);
+
+    }
+
+    private static ByteBuffer header(long epoch, int slots) {
+
+        ByteBuffer header = ByteBuffer.allocate(PAGE);
+        header.putInt(MAGIC).putLong(epoch).putInt(slots);
+        header.clear();
+        return header;
+
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) channel.write(buffer, start + buffer.position());
+
+    }
+
+    private static long offset(int slot) {
+        return PAGE + (long) slot * SLOT;
+    }
+
+    private class Tracked extends AbstractList<Book> implements RandomAccess { // 跟踪增删的列表
+
+        private final List<Book> books;
+
+        Tracked(List<Book> books) {
+            this.books = books;
+        }
+
+        @Override
+        public Book get(int index) {
+            return books.get(index);
+        }
+
+        @Override
+        public Book set(int index, Book book) {
+
+            Book old = books.set(index, book);
+            synchronized (PagedBookFile.this) {
+                release(old);
+                track(book);
+                reordered = true; // 新书的槽位在最后 顺序已经对不上了
+            }
+            return old;
+
+        }
+
+        @Override
+        public void add(int index, Book book) {
+
+            books.add(index, book);
+            synchronized (PagedBookFile.this) {
+                track(book);
+                if (index != books.size() - 1) reordered = true;
+            }
+            modCount++;
+
+        }
+
+        @Override
+        public Book remove(int index) {
+
+            Book old = books.remove(index);
+            synchronized (PagedBookFile.this) {
+                release(old);
+            }
+            modCount++;
+            return old;
+
+        }
+
+        @Override
+        public int size() {
+            return books.size();
+        }
+
+    }
+
+}
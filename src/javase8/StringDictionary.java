@@ -0,0 +1,93 @@
+package javase8;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 字符串字典
+ * 相同的字符串只保存一次 所有内容以UTF-8连续存放在一个byte数组里 通过int编号引用
+ * 查找使用开放寻址的int哈希表 整个字典只有三个数组 没有每个字符串一个对象的开销
+ */
+public class StringDictionary {
+
+    private byte[] bytes = new byte[1 << 10];
+    private int[] offsets = new int[64]; // 第i个字符串占用 [offsets[i], offsets[i + 1])
+    private int[] table = new int[128]; // 保存编号+1 0表示空位
+    private int count;
+    private int used;
+
+    public int encode(String str) { // null编码为-1
+
+        if (str == null) return -1;
+        byte[] value = str.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(value, 0, value.length);
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int id = table[i] - 1;
+            if (id < 0) break;
+            if (matches(id, value)) return id;
+        }
+
+        int id = append(value);
+        if (count * 2 > table.length) rehash();
+        else insert(id, hash);
+        return id;
+
+    }
+
+    public String decode(int id) {
+        return id < 0 ? null : new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long bytes() { // 字典占用的内存 (不含对象头)
+        return bytes.length + offsets.length * 4L + table.length * 4L;
+    }
+
+    private int append(byte[] value) {
+
+        if (used + value.length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + value.length));
+        if (count + 2 > offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        System.arraycopy(value, 0, bytes, used, value.length);
+        offsets[count] = used;
+        used += value.length;
+        offsets[count + 1] = used;
+        return count++;
+
+    }
+
+    private boolean matches(int id, byte[] value) {
+
+        int start = offsets[id];
+        return offsets[id + 1] - start == value.length && Arrays.equals(bytes, start, start + value.length, value, 0, value.length);
+
+    }
+
+    private void insert(int id, int hash) {
+
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = id + 1;
+
+    }
+
+    private void rehash() {
+
+        table = new int[table.length * 2];
+        for (int id = 0; id < count; id++) insert(id, hash(bytes, offsets[id], offsets[id + 1]));
+
+    }
+
+    private static int hash(byte[] value, int from, int to) {
+
+        int hash = 0;
+        for (int i = from; i < to; i++) hash = 31 * hash + value[i];
+        return hash ^ (hash >>> 16);
+
+    }
+
+}